@@ -7,13 +7,188 @@ import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import net.jimblackler.jsonschemafriend.SchemaException;
 import net.jimblackler.jsonschemafriend.SchemaStore;
 
 public class CodeGeneration {
   public static void build(URL url, CodeGenerator codeGenerator) throws CodeGenerationException {
     SchemaStore schemaStore = new SchemaStore();
+    try {
+      for (URI uri : listSchemas(url)) {
+        codeGenerator.build(schemaStore.loadSchema(uri));
+      }
+    } catch (SchemaException | IOException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  public static void build(URI uri, CodeGenerator codeGenerator) throws CodeGenerationException {
+    try {
+      codeGenerator.build(new SchemaStore().loadSchema(uri));
+    } catch (SchemaException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  /**
+   * Generates code for the schemas in a directory, first fetching the schema documents and the
+   * documents they refer to concurrently. This avoids waiting on each remote {@code $ref} in turn
+   * as the schemas are loaded.
+   *
+   * @param url The directory of schemas.
+   * @param codeGenerator The generator to build the schemas with.
+   * @param prefetcher Fetches the documents before the schemas are loaded.
+   */
+  public static void build(URL url, CodeGenerator codeGenerator, SchemaPrefetcher prefetcher)
+      throws CodeGenerationException {
+    SchemaStore schemaStore = new SchemaStore();
+    try {
+      List<URI> uris = listSchemas(url);
+      prefetcher.prefetch(schemaStore, uris);
+      for (URI uri : uris) {
+        codeGenerator.build(schemaStore.loadSchema(uri));
+      }
+    } catch (SchemaException | IOException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  /**
+   * Generates code for the schema files found under a directory, at any depth. The files are read
+   * and stored in the SchemaStore before any schema is loaded, so {@code $ref}s between them need
+   * no further I/O.
+   *
+   * @param root The directory to search, or a jar or zip file to search from its root.
+   * @param discovery Selects the schema files.
+   * @param codeGenerator The generator to build the schemas with.
+   */
+  public static void build(Path root, SchemaDiscovery discovery, CodeGenerator codeGenerator)
+      throws CodeGenerationException {
+    build(root, discovery, codeGenerator, null);
+  }
+
+  /**
+   * Generates code for the schema files found under a directory, as
+   * {@link #build(Path, SchemaDiscovery, CodeGenerator)}, also fetching the documents they refer
+   * to concurrently before the schemas are loaded.
+   *
+   * @param prefetcher Fetches referenced documents, or null to load them as they are needed.
+   */
+  public static void build(Path root, SchemaDiscovery discovery, CodeGenerator codeGenerator,
+      SchemaPrefetcher prefetcher) throws CodeGenerationException {
+    try {
+      if (SchemaDiscovery.isArchive(root)) {
+        try (FileSystem fileSystem = FileSystems.newFileSystem(root, (ClassLoader) null)) {
+          buildDiscovered(fileSystem.getPath("/"), discovery, codeGenerator, prefetcher);
+        }
+      } else {
+        buildDiscovered(root, discovery, codeGenerator, prefetcher);
+      }
+    } catch (IOException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  private static void buildDiscovered(Path root, SchemaDiscovery discovery,
+      CodeGenerator codeGenerator, SchemaPrefetcher prefetcher)
+      throws IOException, CodeGenerationException {
+    SchemaStore schemaStore = new SchemaStore();
+    Map<URI, Object> documents = new LinkedHashMap<>();
+    for (Path path : discovery.find(root)) {
+      URI uri = path.toUri();
+      Object document = DocumentUtils.readDocument(path);
+      documents.put(uri, document);
+      schemaStore.store(uri, document);
+    }
+    if (prefetcher != null) {
+      prefetcher.prefetchReferenced(schemaStore, documents);
+    }
+    try {
+      for (URI uri : documents.keySet()) {
+        codeGenerator.build(schemaStore.loadSchema(uri));
+      }
+    } catch (SchemaException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  /**
+   * Generates code for the schemas in a directory one partition at a time, to bound the memory
+   * used for very large schema sets. The schemas are split into the connected components of the
+   * graph of {@code $ref}s between their documents. Each component is loaded into its own
+   * SchemaStore and built with a fresh generator from the factory, which is completed and
+   * released before the next component is started.
+   *
+   * @param url The directory of schemas.
+   * @param factory Creates the generator for each partition.
+   */
+  public static void buildPartitioned(URL url, PartitionGenerator.Factory factory)
+      throws CodeGenerationException {
+    try {
+      buildPartitioned(listSchemas(url), factory);
+    } catch (IOException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  /**
+   * Generates code for the schema files found under a directory one partition at a time, as
+   * {@link #buildPartitioned(URL, PartitionGenerator.Factory)}.
+   *
+   * @param root The directory to search, or a jar or zip file to search from its root.
+   * @param discovery Selects the schema files.
+   * @param factory Creates the generator for each partition.
+   */
+  public static void buildPartitioned(Path root, SchemaDiscovery discovery,
+      PartitionGenerator.Factory factory) throws CodeGenerationException {
+    try {
+      if (SchemaDiscovery.isArchive(root)) {
+        try (FileSystem fileSystem = FileSystems.newFileSystem(root, (ClassLoader) null)) {
+          buildPartitioned(findUris(fileSystem.getPath("/"), discovery), factory);
+        }
+      } else {
+        buildPartitioned(findUris(root, discovery), factory);
+      }
+    } catch (IOException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  private static List<URI> findUris(Path root, SchemaDiscovery discovery) throws IOException {
+    List<URI> uris = new ArrayList<>();
+    for (Path path : discovery.find(root)) {
+      uris.add(path.toUri());
+    }
+    return uris;
+  }
+
+  private static void buildPartitioned(Collection<URI> uris, PartitionGenerator.Factory factory)
+      throws IOException, CodeGenerationException {
+    try {
+      for (List<URI> partition : partition(uris)) {
+        SchemaStore schemaStore = new SchemaStore();
+        PartitionGenerator partitionGenerator = factory.create();
+        for (URI uri : partition) {
+          partitionGenerator.build(schemaStore.loadSchema(uri));
+        }
+        partitionGenerator.complete();
+      }
+    } catch (SchemaException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
 
+  private static List<URI> listSchemas(URL url) throws IOException {
+    List<URI> uris = new ArrayList<>();
     try (InputStream stream = url.openStream()) {
       try (BufferedReader bufferedReader =
                new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
@@ -22,20 +197,70 @@ public class CodeGeneration {
           if (!resource.endsWith(".json")) {
             continue;
           }
-          URI uri = URI.create(url + (url.toString().endsWith("/") ? "" : "/") + resource);
-          codeGenerator.build(schemaStore.loadSchema(uri));
+          uris.add(URI.create(url + (url.toString().endsWith("/") ? "" : "/") + resource));
         }
       }
-    } catch (SchemaException | IOException e) {
-      throw new CodeGenerationException(e);
     }
+    return uris;
   }
 
-  public static void build(URI uri, CodeGenerator codeGenerator) throws CodeGenerationException {
-    try {
-      codeGenerator.build(new SchemaStore().loadSchema(uri));
-    } catch (SchemaException e) {
-      throw new CodeGenerationException(e);
+  /**
+   * Groups schema documents into the connected components of their {@code $ref} graph. Two
+   * documents are in the same component if either refers to the other, or both refer to a common
+   * document (such as a shared remote schema). Only the listed documents are scanned for
+   * references.
+   */
+  static Collection<List<URI>> partition(Collection<URI> uris) throws IOException {
+    Map<URI, Collection<URI>> references = new HashMap<>();
+    for (URI uri : uris) {
+      Object document = DocumentUtils.readDocument(uri);
+      references.put(uri, DocumentUtils.findReferencedDocuments(document, uri));
+    }
+    return partition(uris, references);
+  }
+
+  /**
+   * Groups schema documents into the connected components of their {@code $ref} graph, as
+   * {@link #partition(Collection)}, from references already found.
+   *
+   * @param references The documents referred to by each of the listed documents.
+   */
+  static Collection<List<URI>> partition(
+      Collection<URI> uris, Map<URI, Collection<URI>> references) {
+    Map<URI, URI> parents = new HashMap<>();
+    for (URI uri : uris) {
+      for (URI referenced : references.get(uri)) {
+        union(parents, uri, referenced);
+      }
+    }
+
+    Map<URI, List<URI>> components = new LinkedHashMap<>();
+    for (URI uri : uris) {
+      components.computeIfAbsent(find(parents, uri), k -> new ArrayList<>()).add(uri);
+    }
+    return components.values();
+  }
+
+  private static URI find(Map<URI, URI> parents, URI uri) {
+    URI root = uri;
+    URI parent;
+    while ((parent = parents.get(root)) != null) {
+      root = parent;
+    }
+    // Compress the path so later lookups are quick.
+    while (!uri.equals(root)) {
+      URI next = parents.get(uri);
+      parents.put(uri, root);
+      uri = next;
+    }
+    return root;
+  }
+
+  private static void union(Map<URI, URI> parents, URI a, URI b) {
+    URI rootA = find(parents, a);
+    URI rootB = find(parents, b);
+    if (!rootA.equals(rootB)) {
+      parents.put(rootB, rootA);
     }
   }
 }
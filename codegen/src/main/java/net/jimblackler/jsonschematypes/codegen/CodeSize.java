@@ -0,0 +1,36 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+/**
+ * The number of classes and methods in generated code, for checking it against a budget such as
+ * the method limit of an Android dex file. Methods and constructors declared in the source are
+ * counted; those the compiler adds, such as bridge methods and the values() method of enums, are
+ * not. Support classes copied into the runtime package, such as JsonRecordReader, LazyJson,
+ * CborReader and ItemIterator, are not counted; they are fixed in size, and written once however
+ * many generated classes use them.
+ */
+public class CodeSize {
+  private final int classCount;
+  private final int methodCount;
+
+  public CodeSize(int classCount, int methodCount) {
+    this.classCount = classCount;
+    this.methodCount = methodCount;
+  }
+
+  public int getClassCount() {
+    return classCount;
+  }
+
+  public int getMethodCount() {
+    return methodCount;
+  }
+
+  public CodeSize plus(CodeSize other) {
+    return new CodeSize(classCount + other.classCount, methodCount + other.methodCount);
+  }
+
+  @Override
+  public String toString() {
+    return classCount + " classes, " + methodCount + " methods";
+  }
+}
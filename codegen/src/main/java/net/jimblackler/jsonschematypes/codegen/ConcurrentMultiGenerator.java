@@ -0,0 +1,142 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import net.jimblackler.jsonschemafriend.Schema;
+
+/**
+ * A generator that passes each schema to several generators, like {@link MultiGenerator}, but runs
+ * each generator on its own thread. Generators must not share state with each other. Each
+ * generator only ever sees one thread, so generators need not be thread-safe themselves.
+ *
+ * {@link #build(Schema)} returns once the schema is queued. It blocks while any generator has the
+ * maximum number of schemas waiting, so that a slow generator cannot let an unbounded number of
+ * schemas build up in memory. Schemas must not be modified once passed to the generator.
+ *
+ * {@link #finish()} must be called once all schemas are passed, before the output of the
+ * generators is used. If any generator failed, the first failure is thrown from the next call of
+ * {@link #build(Schema)} or {@link #finish()}; the generator that failed is not used again.
+ */
+public class ConcurrentMultiGenerator implements CodeGenerator, AutoCloseable {
+  private static final int DEFAULT_MAX_QUEUED = 16;
+
+  private final Collection<Backend> backends = new ArrayList<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  public ConcurrentMultiGenerator(Iterable<CodeGenerator> generators) {
+    this(generators, DEFAULT_MAX_QUEUED);
+  }
+
+  /**
+   * @param generators The generators to pass schemas to.
+   * @param maxQueued The number of schemas that may wait for any one generator before
+   *     {@link #build(Schema)} blocks.
+   */
+  public ConcurrentMultiGenerator(Iterable<CodeGenerator> generators, int maxQueued) {
+    for (CodeGenerator generator : generators) {
+      backends.add(new Backend(generator, maxQueued));
+    }
+  }
+
+  @Override
+  public void build(Schema schema) throws CodeGenerationException {
+    throwIfFailed();
+    for (Backend backend : backends) {
+      backend.submit(schema);
+    }
+  }
+
+  /**
+   * Waits for all generators to finish building the schemas passed so far.
+   *
+   * @throws CodeGenerationException If any generator failed.
+   */
+  public void finish() throws CodeGenerationException {
+    for (Backend backend : backends) {
+      try {
+        // Each executor runs tasks in order, so this completes after all earlier schemas.
+        backend.executor.submit(() -> {}).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CodeGenerationException(e);
+      } catch (ExecutionException e) {
+        rethrow(e.getCause());
+      }
+    }
+    throwIfFailed();
+  }
+
+  @Override
+  public void close() {
+    for (Backend backend : backends) {
+      backend.executor.shutdownNow();
+    }
+  }
+
+  private void throwIfFailed() throws CodeGenerationException {
+    Throwable throwable = failure.get();
+    if (throwable != null) {
+      rethrow(throwable);
+    }
+  }
+
+  /**
+   * Throws the failure of a generator on the calling thread. Exceptions the generator could have
+   * thrown itself, and Errors, are thrown unchanged; anything else is wrapped.
+   */
+  private static void rethrow(Throwable throwable) throws CodeGenerationException {
+    if (throwable instanceof CodeGenerationException) {
+      throw (CodeGenerationException) throwable;
+    }
+    if (throwable instanceof RuntimeException) {
+      throw (RuntimeException) throwable;
+    }
+    if (throwable instanceof Error) {
+      throw (Error) throwable;
+    }
+    throw new CodeGenerationException(throwable);
+  }
+
+  private class Backend {
+    private final CodeGenerator generator;
+    private final ExecutorService executor;
+    private final Semaphore queued;
+    private volatile boolean failed;
+
+    Backend(CodeGenerator generator, int maxQueued) {
+      this.generator = generator;
+      executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "codegen-" + generator.getClass().getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+      });
+      queued = new Semaphore(maxQueued);
+    }
+
+    void submit(Schema schema) throws CodeGenerationException {
+      try {
+        queued.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CodeGenerationException(e);
+      }
+      executor.execute(() -> {
+        try {
+          if (!failed) {
+            generator.build(schema);
+          }
+        } catch (CodeGenerationException | RuntimeException | Error e) {
+          failed = true;
+          failure.compareAndSet(null, e);
+        } finally {
+          queued.release();
+        }
+      });
+    }
+  }
+}
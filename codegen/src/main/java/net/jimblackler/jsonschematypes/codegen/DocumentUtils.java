@@ -0,0 +1,124 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+class DocumentUtils {
+  static Object readDocument(URI uri) throws IOException {
+    try (InputStream stream = uri.toURL().openStream()) {
+      return parseDocument(readAll(stream));
+    }
+  }
+
+  private static String readAll(InputStream stream) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = stream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, read);
+    }
+    return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  static Object readDocument(Path path) throws IOException {
+    return parseDocument(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+  }
+
+  static Object parseDocument(String content) throws IOException {
+    try {
+      return new JSONTokener(content).nextValue();
+    } catch (JSONException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Finds the documents referred to by the {@code $ref} keywords in a document.
+   *
+   * @param document The parsed document.
+   * @param uri The URI the document was loaded from.
+   * @return The URIs of the referenced documents, without fragments. References within the
+   *     document itself are not included.
+   */
+  static Collection<URI> findReferencedDocuments(Object document, URI uri) {
+    URI documentUri = withoutFragment(uri);
+    Collection<URI> found = new LinkedHashSet<>();
+    Deque<Object> nodes = new ArrayDeque<>();
+    Deque<URI> bases = new ArrayDeque<>();
+    nodes.push(document);
+    bases.push(documentUri);
+    while (!nodes.isEmpty()) {
+      Object node = nodes.pop();
+      URI base = bases.pop();
+      if (node instanceof JSONObject) {
+        JSONObject jsonObject = (JSONObject) node;
+        Object id = jsonObject.has("$id") ? jsonObject.opt("$id") : jsonObject.opt("id");
+        if (id instanceof String) {
+          base = resolve(base, (String) id);
+        }
+        for (String key : jsonObject.keySet()) {
+          Object value = jsonObject.opt(key);
+          if ("$ref".equals(key) && value instanceof String) {
+            URI target = withoutFragment(resolve(base, (String) value));
+            if (!target.equals(documentUri)) {
+              found.add(target);
+            }
+          } else if (value instanceof JSONObject || value instanceof JSONArray) {
+            nodes.push(value);
+            bases.push(base);
+          }
+        }
+      } else if (node instanceof JSONArray) {
+        for (Object value : (JSONArray) node) {
+          if (value instanceof JSONObject || value instanceof JSONArray) {
+            nodes.push(value);
+            bases.push(base);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  private static URI resolve(URI base, String reference) {
+    try {
+      URI referenceUri = new URI(reference);
+      String baseString = base.toString();
+      int separator = baseString.indexOf("!/");
+      if (base.isOpaque() && separator != -1 && !referenceUri.isAbsolute()) {
+        // URIs of archive entries such as jar:file:/a.zip!/b.json are opaque, so the entry path is
+        // resolved on its own, as java.net.URL does.
+        URI entry = new URI(baseString.substring(separator + 1)).resolve(referenceUri);
+        return new URI(baseString.substring(0, separator + 1) + entry);
+      }
+      return base.resolve(referenceUri);
+    } catch (URISyntaxException e) {
+      return base;
+    }
+  }
+
+  static URI withoutFragment(URI uri) {
+    if (uri.getFragment() == null) {
+      return uri;
+    }
+    try {
+      return new URI(uri.getScheme(), uri.getSchemeSpecificPart(), null);
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import com.helger.jcodemodel.writer.AbstractCodeWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles the output of a JavaCodeGenerator without touching the file system, and loads the
+ * classes into a new class loader. Classes loaded by one compilation are isolated from those of
+ * any other, so the same class names can be loaded many times, and each set of classes can be
+ * unloaded when it is no longer referenced.
+ *
+ * The code is compiled against the class path of the parent class loader, and any of its own
+ * parents that load from URLs, followed by the application class path. Annotation processors are
+ * not run.
+ */
+class InMemoryCompiler {
+  private InMemoryCompiler() {}
+
+  /**
+   * Compiles the generated code.
+   *
+   * @param javaCodeGenerator The generator, after its schemas are built.
+   * @param parent The class loader of the classes the generated code uses, such as org.json.
+   * @return A class loader of the generated classes.
+   */
+  static ClassLoader compile(JavaCodeGenerator javaCodeGenerator, ClassLoader parent)
+      throws CodeGenerationException {
+    return compile(Collections.singletonList(javaCodeGenerator), parent);
+  }
+
+  /**
+   * Compiles the code of several generators together, such as those of the partitions of a schema
+   * set. Files written by more than one generator, such as support classes, are compiled once.
+   *
+   * @param javaCodeGenerators The generators, after their schemas are built.
+   * @param parent The class loader of the classes the generated code uses, such as org.json.
+   * @return A class loader of the generated classes.
+   */
+  static ClassLoader compile(Collection<JavaCodeGenerator> javaCodeGenerators, ClassLoader parent)
+      throws CodeGenerationException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new CodeGenerationException("No Java compiler is available; a JDK is required");
+    }
+
+    Map<String, ByteArrayOutputStream> files = new LinkedHashMap<>();
+    try {
+      for (JavaCodeGenerator javaCodeGenerator : javaCodeGenerators) {
+        javaCodeGenerator.output(new AbstractCodeWriter(StandardCharsets.UTF_8, "\n") {
+          @Override
+          public OutputStream openBinary(String dirName, String fileName) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            files.put(dirName.isEmpty() ? fileName : dirName + "/" + fileName, stream);
+            return stream;
+          }
+
+          @Override
+          public void close() {}
+        });
+      }
+    } catch (IOException e) {
+      throw new CodeGenerationException(e);
+    }
+
+    Collection<JavaFileObject> sources = new ArrayList<>();
+    for (Map.Entry<String, ByteArrayOutputStream> entry : files.entrySet()) {
+      if (entry.getKey().endsWith(".java")) {
+        sources.add(new Source(
+            entry.getKey(), new String(entry.getValue().toByteArray(), StandardCharsets.UTF_8)));
+      }
+    }
+
+    Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    StandardJavaFileManager standardFileManager =
+        compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+    JavaFileManager fileManager =
+        new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+          @Override
+          public JavaFileObject getJavaFileForOutput(Location location, String className,
+              JavaFileObject.Kind kind, FileObject sibling) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            classes.put(className, stream);
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/')
+                                                + kind.extension),
+                kind) {
+              @Override
+              public OutputStream openOutputStream() {
+                return stream;
+              }
+            };
+          }
+        };
+    List<String> options =
+        Arrays.asList("-nowarn", "-proc:none", "-classpath", classPath(parent));
+    boolean compiled =
+        compiler.getTask(null, fileManager, diagnostics, options, null, sources).call();
+    if (!compiled) {
+      StringBuilder message = new StringBuilder("The generated code did not compile:");
+      for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+        if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+          message.append("\n").append(diagnostic);
+        }
+      }
+      throw new CodeGenerationException(message.toString());
+    }
+
+    return new ClassLoader(parent) {
+      @Override
+      protected Class<?> findClass(String name) throws ClassNotFoundException {
+        ByteArrayOutputStream stream = classes.get(name);
+        if (stream == null) {
+          throw new ClassNotFoundException(name);
+        }
+        byte[] bytes = stream.toByteArray();
+        return defineClass(name, bytes, 0, bytes.length);
+      }
+    };
+  }
+
+  /**
+   * Returns the class path of the class loader and its parents, as far as it can be found, then
+   * the application class path. Class loaders that do not load from local files add nothing.
+   */
+  private static String classPath(ClassLoader classLoader) {
+    Set<String> entries = new LinkedHashSet<>();
+    for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+      if (!(loader instanceof URLClassLoader)) {
+        continue;
+      }
+      for (URL url : ((URLClassLoader) loader).getURLs()) {
+        if (!"file".equals(url.getProtocol())) {
+          continue;
+        }
+        try {
+          entries.add(Paths.get(url.toURI()).toString());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+          // Not a path javac could read.
+        }
+      }
+    }
+    String applicationClassPath = System.getProperty("java.class.path");
+    if (applicationClassPath != null && !applicationClassPath.isEmpty()) {
+      entries.addAll(Arrays.asList(applicationClassPath.split(File.pathSeparator)));
+    }
+    return String.join(File.pathSeparator, entries);
+  }
+
+  private static class Source extends SimpleJavaFileObject {
+    private final String code;
+
+    Source(String path, String code) {
+      super(URI.create("mem:///" + path), Kind.SOURCE);
+      this.code = code;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return code;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package net.jimblackler.jsonschematypes.codegen;
 
 import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.makeClassForSchema;
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.varyName;
 import static net.jimblackler.jsonschematypes.codegen.NameUtils.camelToSnake;
 import static net.jimblackler.jsonschematypes.codegen.NameUtils.makeJavaLegal;
 import static net.jimblackler.jsonschematypes.codegen.NameUtils.nameForSchema;
@@ -19,22 +20,35 @@ import com.helger.jcodemodel.JInvocation;
 import com.helger.jcodemodel.JMethod;
 import com.helger.jcodemodel.JMod;
 import com.helger.jcodemodel.JNarrowedClass;
-import com.helger.jcodemodel.JPackage;
 import com.helger.jcodemodel.JSwitch;
 import com.helger.jcodemodel.JVar;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import net.jimblackler.jsonschemafriend.CombinedSchema;
 import net.jimblackler.jsonschemafriend.Schema;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 public class JavaBuilder {
-  private final JDefinedClass jDefinedClass;
-  private final String _name;
+  private final JavaCodeGenerator javaCodeGenerator;
+  private final CombinedSchema combinedSchema;
+  private final Collection<String> types;
+  private final String name;
+  private final boolean isClass;
+  private final boolean isEnum;
+  private JDefinedClass jDefinedClass;
+  private String _name;
+  private boolean declared;
+  private JFieldVar dataField;
   private final Collection<AbstractJType> compatibleTypes = new ArrayList<>();
   private final AbstractJType dataType;
   private final List<JEnumConstant> enumConstants = new ArrayList<>();
@@ -42,25 +56,27 @@ public class JavaBuilder {
   private final String mode;
   private final AbstractJClass arrayRef;
   private final AbstractJClass objectRef;
-
-  public JavaBuilder(JavaCodeGenerator javaCodeGenerator, Schema schema, String mode)
-      throws CodeGenerationException {
+  // The other schemas that share the class, as they have the same structure.
+  private final List<URI> sharedUris = new ArrayList<>();
+
+  /**
+   * Creates the builder and works out the type information of the schema. No other builders are
+   * created or consulted; the class itself is created later in {@link #declare()}, and its
+   * accessors in {@link #writeAccessors()}. This is driven by {@link JavaCodeGenerator} from a work
+   * queue, so that schemas of any depth can be built without recursion.
+   */
+  public JavaBuilder(JavaCodeGenerator javaCodeGenerator, Schema schema, String mode) {
+    this.javaCodeGenerator = javaCodeGenerator;
     this.schema = schema;
     this.mode = mode;
-    CombinedSchema combinedSchema = new CombinedSchema(schema);
+    combinedSchema = new CombinedSchema(schema);
     JCodeModel jCodeModel = javaCodeGenerator.getJCodeModel();
-    if ("org.json".equals(mode)) {
-      objectRef = jCodeModel.ref(JSONObject.class);
-      arrayRef = jCodeModel.ref(JSONArray.class);
-    } else {
-      objectRef = jCodeModel.ref(Map.class).narrow(String.class, Object.class);
-      arrayRef = jCodeModel.ref(List.class).narrow(Object.class);
-    }
+    objectRef = objectRef(jCodeModel, mode);
+    arrayRef = arrayRef(jCodeModel, mode);
 
-    JPackage jPackage = javaCodeGenerator.getJPackage();
     javaCodeGenerator.register(schema.getUri(), this);
 
-    Collection<String> types = combinedSchema.getInferredTypes();
+    types = combinedSchema.getInferredTypes();
 
     for (String type : types) {
       switch (type) {
@@ -100,24 +116,57 @@ public class JavaBuilder {
       }
     }
 
+    dataType = compatibleTypes.size() == 1 ? compatibleTypes.iterator().next()
+                                           : jCodeModel.ref(Object.class);
+
+    name = nameForSchema(schema);
+    _name = name;
+    boolean isComplexObject =
+        dataType.equals(objectRef) && !combinedSchema.getProperties().isEmpty();
+    boolean isArray = dataType.equals(arrayRef);
+    isClass = isComplexObject || isArray;
+    isEnum = !isClass && schema.getEnums() != null
+        && dataType.equals(jCodeModel.ref(String.class));
+  }
+
+  /**
+   * Records that a schema of the same structure at another location shares the class, so that
+   * the documentation of the class names every schema it is used for.
+   */
+  void addSharedUri(URI uri) {
+    if (jDefinedClass == null) {
+      sharedUris.add(uri);
+    } else {
+      jDefinedClass.javadoc().add(System.lineSeparator() + "Also used for " + uri);
+    }
+  }
+
+  /**
+   * Creates the class or enum for the schema, if it needs one. The builder of the parent schema
+   * must already have been declared.
+   */
+  void declare() throws CodeGenerationException {
+    declared = true;
+    if (!isClass && !isEnum) {
+      return;
+    }
+    JCodeModel jCodeModel = javaCodeGenerator.getJCodeModel();
     Schema parentSchema = schema.getParent();
     IJClassContainer<JDefinedClass> classParent;
     if (parentSchema == null) {
-      classParent = jPackage;
+      classParent = javaCodeGenerator.getJPackage();
     } else {
       JDefinedClass definedClass = javaCodeGenerator.get(parentSchema).getDefinedClass();
-      classParent = definedClass == null ? jPackage : definedClass;
+      classParent = definedClass == null ? javaCodeGenerator.getJPackage() : definedClass;
     }
 
-    dataType = compatibleTypes.size() == 1 ? compatibleTypes.iterator().next()
-                                           : jCodeModel.ref(Object.class);
+    // Top-level names may be reserved by other partitions generated into the same package.
+    Predicate<String> isReserved = classParent == javaCodeGenerator.getJPackage()
+        ? javaCodeGenerator::isReservedClassName
+        : name1 -> false;
 
-    String name = nameForSchema(schema);
-    boolean isComplexObject =
-        dataType.equals(objectRef) && !combinedSchema.getProperties().isEmpty();
-    boolean isArray = dataType.equals(arrayRef);
-    if (isComplexObject || isArray) {
-      JDefinedClass _class = makeClassForSchema(name,
+    if (isClass) {
+      JDefinedClass _class = makeClassForSchema(name, isReserved,
           (name12)
               -> classParent._class(
                   parentSchema == null ? JMod.PUBLIC : JMod.STATIC | JMod.PUBLIC, name12));
@@ -137,6 +186,10 @@ public class JavaBuilder {
         docs.append("Created from ").append(str);
         toAppend = System.lineSeparator();
       }
+      for (URI sharedUri : sharedUris) {
+        docs.append(toAppend).append("Also used for ").append(sharedUri);
+        toAppend = System.lineSeparator();
+      }
       if (false) {
         docs.append(toAppend)
             .append("Explicit types ")
@@ -146,17 +199,30 @@ public class JavaBuilder {
             .append(combinedSchema.getInferredTypes());
       }
 
+      if ("immutable".equals(mode)) {
+        docs.append(docs.length() == 0 ? "" : System.lineSeparator() + System.lineSeparator())
+            .append("Instances are deeply immutable, so they can be shared between threads without")
+            .append(" synchronization or copying.");
+      }
+
       jDefinedClass.javadoc().add(docs.toString());
 
       String dataObjectName = getDataTypeName(dataType);
       String dataObjectNameLowerCase = NameUtils.lowerCaseFirst(dataObjectName);
-      JFieldVar dataField =
-          jDefinedClass.field(JMod.PRIVATE | JMod.FINAL, dataType, dataObjectNameLowerCase);
+      dataField = jDefinedClass.field(JMod.PRIVATE | JMod.FINAL, dataType, dataObjectNameLowerCase);
 
       /* Constructor */
       JMethod constructor = jDefinedClass.constructor(JMod.PUBLIC);
       JVar objectParam = constructor.param(dataType, dataObjectNameLowerCase);
-      constructor.body().assign(JExpr._this().ref(dataField), objectParam);
+      if ("immutable".equals(mode)) {
+        // The data is copied once, here; data already frozen by another wrapper is not copied.
+        constructor.body().assign(JExpr._this().ref(dataField),
+            javaCodeGenerator.getRuntimeClass("FrozenJson")
+                .staticInvoke(dataType.equals(objectRef) ? "freezeMap" : "freezeList")
+                .arg(objectParam));
+      } else {
+        constructor.body().assign(JExpr._this().ref(dataField), objectParam);
+      }
 
       /* Getter */
       JMethod getter = jDefinedClass.method(JMod.PUBLIC, dataType,
@@ -164,63 +230,360 @@ public class JavaBuilder {
       IJExpression expr = smartUnbox(jCodeModel, dataField, dataType);
       getter.body()._return(expr);
 
-      for (Map.Entry<String, Schema> entry : combinedSchema.getProperties().entrySet()) {
-        Schema propertySchema = entry.getValue();
-        JavaBuilder javaBuilder = javaCodeGenerator.get(propertySchema);
-        String propertyName = entry.getKey();
-        javaBuilder.writePropertyGetters(schema.getRequiredProperties().contains(propertyName),
-            expressionFromObject(propertySchema.getDefault()), jDefinedClass, dataField,
-            propertyName, jCodeModel);
+      if ("lazy".equals(mode)) {
+        writeLazyMethods(jCodeModel);
       }
 
-      Collection<Schema> itemsTuple = schema.getItemsTuple();
-      if (itemsTuple != null) {
-        int idx = 0;
-        for (Schema itemsSchema : itemsTuple) {
-          JavaBuilder javaBuilder = javaCodeGenerator.get(itemsSchema);
-          javaBuilder.writeItemGetters(jDefinedClass, idx, dataField, jCodeModel,
-              expressionFromObject(itemsSchema.getDefault()));
-          idx++;
+      if (parentSchema == null) {
+        JDefinedClass fieldEnum = null;
+        if (javaCodeGenerator.getProjections() && dataType.equals(objectRef)) {
+          fieldEnum = writeFieldEnum();
+          writeDecode(jCodeModel, fieldEnum);
+        }
+        if (javaCodeGenerator.getStreamReaders()) {
+          writeRecordReader(jCodeModel, null);
+          if (fieldEnum != null) {
+            writeRecordReader(jCodeModel, fieldEnum);
+          }
         }
       }
-
-      Schema _items = schema.getItems();
-      if (_items != null) {
-        JavaBuilder javaBuilder = javaCodeGenerator.get(_items);
-        javaBuilder.writeItemGetters(
-            jDefinedClass, -1, dataField, jCodeModel, expressionFromObject(_items.getDefault()));
-      }
-
-      Schema additionalItems = schema.getAdditionalItems();
-      if (additionalItems != null) {
-        JavaBuilder javaBuilder = javaCodeGenerator.get(additionalItems);
-        javaBuilder.writeItemGetters(jDefinedClass, -1, dataField, jCodeModel,
-            expressionFromObject(additionalItems.getDefault()));
-      }
-
-      if (types.contains("array")) {
-        jDefinedClass.method(JMod.PUBLIC, jCodeModel.INT, "size")
-            .body()
-            ._return(JExpr.invoke(castIfNeeded(arrayRef, dataField.type(), dataField),
-                "org.json".equals(mode) ? "length" : "size"));
-      }
-    } else if (schema.getEnums() != null && dataType.equals(jCodeModel.ref(String.class))) {
+    } else {
       List<Object> enums = schema.getEnums();
-      JDefinedClass _enum = makeClassForSchema(name, classParent::_enum);
+      JDefinedClass _enum = makeClassForSchema(name, isReserved, classParent::_enum);
       String s = schema.getUri().toString();
       if (!s.isEmpty()) {
         _enum.javadoc().add("Created from " + s);
       }
+      for (URI sharedUri : sharedUris) {
+        _enum.javadoc().add(System.lineSeparator() + "Also used for " + sharedUri);
+      }
       _name = _enum.name();
       for (Object value : enums) {
         enumConstants.add(
             _enum.enumConstant(makeJavaLegal(camelToSnake(value.toString()).toUpperCase())));
       }
       jDefinedClass = _enum;
+    }
+  }
+
+  /**
+   * Writes constructors from raw JSON bytes, which are wrapped without being parsed, and methods to
+   * return the bytes again.
+   */
+  private void writeLazyMethods(JCodeModel jCodeModel) {
+    AbstractJClass lazyJson = javaCodeGenerator.getRuntimeClass("LazyJson");
+    String factory = dataType.equals(objectRef) ? "object" : "array";
+    for (Class<?> source : new Class<?>[] {byte[].class, ByteBuffer.class}) {
+      JMethod constructor = jDefinedClass.constructor(JMod.PUBLIC);
+      constructor.javadoc().add("Wraps the JSON in the "
+          + (source == byte[].class ? "bytes" : "remaining bytes of the buffer")
+          + ", which are only scanned when a property is first read, and must not be changed "
+          + "afterwards.");
+      JVar param = constructor.param(source, source == byte[].class ? "bytes" : "buffer");
+      constructor.body().assign(JExpr._this().ref(dataField),
+          lazyJson.staticInvoke(factory).arg(param).arg(javaCodeGenerator.getStringTable(this)));
+    }
+
+    JMethod toBytes = jDefinedClass.method(JMod.PUBLIC, byte[].class, "toBytes");
+    toBytes.javadoc().add("Returns the data as UTF-8 JSON. Data read from bytes is returned as it "
+        + "was read, without copying when it spanned a whole array.");
+    toBytes.body()._return(lazyJson.staticInvoke("toBytes").arg(dataField));
+
+    JMethod toByteBuffer =
+        jDefinedClass.method(JMod.PUBLIC, jCodeModel.ref(ByteBuffer.class), "toByteBuffer");
+    toByteBuffer.javadoc().add("Returns the data as UTF-8 JSON in a read-only buffer. Data read "
+        + "from bytes is returned as it was read, without copying.");
+    toByteBuffer.body()._return(lazyJson.staticInvoke("toByteBuffer").arg(dataField));
+  }
+
+  /**
+   * Writes the enum of the properties of the class. It is declared before the nested classes of
+   * the property schemas, so it is named Field unless the class itself is, in which case it is
+   * Field2; a nested class that would also be called Field is named differently instead.
+   */
+  private JDefinedClass writeFieldEnum() {
+    Collection<String> takenNames = new HashSet<>();
+    takenNames.add(_name);
+    for (JDefinedClass nested : jDefinedClass.classes()) {
+      takenNames.add(nested.name());
+    }
+    String enumName = "Field";
+    while (takenNames.contains(enumName)) {
+      enumName = varyName(enumName);
+    }
+    JDefinedClass fieldEnum = makeClassForSchema(enumName, jDefinedClass::_enum);
+    fieldEnum._implements(javaCodeGenerator.getRuntimeClass("JsonField"));
+    fieldEnum.javadoc().add("The properties of " + _name + ", to choose which are decoded.");
+    JFieldVar key = fieldEnum.field(JMod.PRIVATE | JMod.FINAL, String.class, "key");
+    JMethod constructor = fieldEnum.constructor(JMod.PRIVATE);
+    JVar keyParam = constructor.param(String.class, "key");
+    constructor.body().assign(JExpr._this().ref(key), keyParam);
+    JMethod keyMethod = fieldEnum.method(JMod.PUBLIC, String.class, "key");
+    keyMethod.annotate(Override.class);
+    keyMethod.body()._return(key);
+
+    Collection<String> constantNames = new HashSet<>();
+    for (String propertyName : combinedSchema.getProperties().keySet()) {
+      String constantName = makeJavaLegal(camelToSnake(propertyName).toUpperCase());
+      while (!constantNames.add(constantName)) {
+        constantName = varyName(constantName);
+      }
+      fieldEnum.enumConstant(constantName).arg(JExpr.lit(propertyName));
+    }
+    return fieldEnum;
+  }
+
+  private void writeDecode(JCodeModel jCodeModel, JDefinedClass fieldEnum) {
+    JMethod decode = jDefinedClass.method(JMod.PUBLIC | JMod.STATIC, jDefinedClass, "decode");
+    decode.javadoc().add("Reads an instance from the stream, decoding only the properties chosen "
+        + "from " + fieldEnum.name() + ". The values of other properties are skipped, and appear "
+        + "absent from the instance.");
+    decode._throws(IOException.class);
+    JVar in = decode.param(InputStream.class, "in");
+    JVar fields = decode.param(jCodeModel.ref(Collection.class).narrow(fieldEnum), "fields");
+    IJExpression parsed =
+        JExpr._new(javaCodeGenerator.getRuntimeClass("JsonStreamParser"))
+            .arg(in)
+            .arg(javaCodeGenerator.getStringTable(this))
+            .invoke("readObject")
+            .arg(javaCodeGenerator.getRuntimeClass("JsonField").staticInvoke("keys").arg(fields));
+    if (!"org.json".equals(mode)) {
+      // The result of readObject() is already a Map<String, Object>.
+      decode.body()._return(JExpr._new(jDefinedClass).arg(parsed));
+    } else {
+      decode.body()._return(JExpr._new(jDefinedClass).arg(JExpr._new(dataType).arg(parsed)));
+    }
+  }
+
+  /**
+   * Writes a static records() method that returns a reader of instances from a stream.
+   *
+   * @param fieldEnum The enum of properties to choose from, or null to read all properties.
+   */
+  private void writeRecordReader(JCodeModel jCodeModel, JDefinedClass fieldEnum) {
+    AbstractJClass readerType =
+        javaCodeGenerator.getRuntimeClass("JsonRecordReader").narrow(jDefinedClass);
+    JMethod records = jDefinedClass.method(JMod.PUBLIC | JMod.STATIC, readerType, "records");
+    JVar in = records.param(InputStream.class, "in");
+    JVar fields = null;
+    if (fieldEnum == null) {
+      records.javadoc().add("Reads instances one at a time from newline-delimited JSON, or from a "
+          + "JSON array, in the stream.");
+    } else {
+      records.javadoc().add("Reads instances one at a time from newline-delimited JSON, or from a "
+          + "JSON array, in the stream, decoding only the chosen properties.");
+      fields = records.param(jCodeModel.ref(Collection.class).narrow(fieldEnum), "fields");
+    }
+
+    JDefinedClass reader = javaCodeGenerator.anonymousClass(readerType);
+    JMethod wrap = reader.method(JMod.PROTECTED, jDefinedClass, "wrap");
+    wrap.annotate(Override.class);
+    JVar data = wrap.param(Object.class, "data");
+    IJExpression converted;
+    if ("org.json".equals(mode)) {
+      // The parser reads Maps and Lists, which org.json wraps deeply.
+      converted = JExpr._new(dataType)
+                      .arg(data.castTo(jCodeModel.ref(dataType.equals(objectRef) ? Map.class
+                                                                                  : List.class)));
     } else {
-      jDefinedClass = null;
-      _name = name;
+      wrap.annotate(SuppressWarnings.class).param("value", "unchecked");
+      converted = data.castTo(dataType);
     }
+    wrap.body()._return(JExpr._new(jDefinedClass).arg(converted));
+    JInvocation newReader = JExpr._new(reader).arg(in);
+    newReader.arg(fields == null
+            ? JExpr._null()
+            : javaCodeGenerator.getRuntimeClass("JsonField").staticInvoke("keys").arg(fields));
+    newReader.arg(javaCodeGenerator.getStringTable(this));
+    records.body()._return(newReader);
+  }
+
+  /**
+   * Adds the property names and string enum values of the schema, which decoders are likely to
+   * read many times.
+   */
+  void addKnownStrings(Collection<String> strings) {
+    if (isClass) {
+      strings.addAll(combinedSchema.getProperties().keySet());
+    }
+    List<Object> enums = schema.getEnums();
+    if (enums != null) {
+      for (Object value : enums) {
+        if (value instanceof String) {
+          strings.add((String) value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the schemas whose builders are needed to write the accessors of this builder.
+   */
+  Collection<Schema> getReferencedSchemas() {
+    Collection<Schema> referenced = new ArrayList<>();
+    if (!isClass) {
+      return referenced;
+    }
+    referenced.addAll(combinedSchema.getProperties().values());
+    Collection<Schema> itemsTuple = schema.getItemsTuple();
+    if (itemsTuple != null) {
+      referenced.addAll(itemsTuple);
+    }
+    if (schema.getItems() != null) {
+      referenced.add(schema.getItems());
+    }
+    if (schema.getAdditionalItems() != null) {
+      referenced.add(schema.getAdditionalItems());
+    }
+    return referenced;
+  }
+
+  /**
+   * Writes the property and item accessors of the class. The builders of all the schemas returned
+   * by {@link #getReferencedSchemas()} must already have been declared.
+   */
+  void writeAccessors() throws CodeGenerationException {
+    if (!isClass) {
+      return;
+    }
+    JCodeModel jCodeModel = javaCodeGenerator.getJCodeModel();
+    if (javaCodeGenerator.getAccessCounters()) {
+      javaCodeGenerator.countAccesses(this);
+    }
+    for (Map.Entry<String, Schema> entry : combinedSchema.getProperties().entrySet()) {
+      Schema propertySchema = entry.getValue();
+      JavaBuilder javaBuilder = javaCodeGenerator.get(propertySchema);
+      String propertyName = entry.getKey();
+      javaBuilder.writePropertyGetters(schema.getRequiredProperties().contains(propertyName),
+          expressionFromObject(propertySchema.getDefault()), jDefinedClass, dataField, propertyName,
+          jCodeModel);
+    }
+
+    // Declared before the item getters, as compact iterators use it.
+    if (types.contains("array")) {
+      jDefinedClass.method(JMod.PUBLIC, jCodeModel.INT, "size")
+          .body()
+          ._return(JExpr.invoke(castIfNeeded(arrayRef, dataField.type(), dataField),
+              "org.json".equals(mode) ? "length" : "size"));
+    }
+
+    Collection<Schema> itemsTuple = schema.getItemsTuple();
+    if (itemsTuple != null) {
+      int idx = 0;
+      for (Schema itemsSchema : itemsTuple) {
+        JavaBuilder javaBuilder = javaCodeGenerator.get(itemsSchema);
+        javaBuilder.writeItemGetters(jDefinedClass, idx, dataField, jCodeModel,
+            expressionFromObject(itemsSchema.getDefault()), javaBuilder.getterNameFor(itemsSchema));
+        idx++;
+      }
+    }
+
+    Schema _items = schema.getItems();
+    if (_items != null) {
+      JavaBuilder javaBuilder = javaCodeGenerator.get(_items);
+      javaBuilder.writeItemGetters(jDefinedClass, -1, dataField, jCodeModel,
+          expressionFromObject(_items.getDefault()), javaBuilder.getterNameFor(_items));
+    }
+
+    Schema additionalItems = schema.getAdditionalItems();
+    if (additionalItems != null) {
+      JavaBuilder javaBuilder = javaCodeGenerator.get(additionalItems);
+      javaBuilder.writeItemGetters(jDefinedClass, -1, dataField, jCodeModel,
+          expressionFromObject(additionalItems.getDefault()),
+          javaBuilder.getterNameFor(additionalItems));
+    }
+
+    if (javaCodeGenerator.getEqualityMethods()) {
+      new JavaEqualityBuilder(javaCodeGenerator, this).build(combinedSchema.getProperties());
+    }
+
+    if (javaCodeGenerator.getBuilders() && wrapsObject()) {
+      new JavaBuilderClassBuilder(javaCodeGenerator, this)
+          .build(combinedSchema.getProperties(), schema.getRequiredProperties());
+    }
+
+    if (javaCodeGenerator.getColumnBatches() && wrapsObject()) {
+      new JavaColumnsBuilder(javaCodeGenerator, this).build(combinedSchema.getProperties());
+    }
+
+    if (javaCodeGenerator.getCborCodecs() && wrapsObject()) {
+      new JavaCborBuilder(javaCodeGenerator, this).build(combinedSchema.getProperties());
+    }
+  }
+
+  /**
+   * Returns true if the schema produces a wrapper class (rather than an enum or no class at all).
+   */
+  boolean isClass() {
+    return isClass;
+  }
+
+  AbstractJType getDataType() {
+    return dataType;
+  }
+
+  JFieldVar getDataField() {
+    return dataField;
+  }
+
+  /**
+   * Returns true if the data of the schema is always an object.
+   */
+  boolean wrapsObject() {
+    return dataType.equals(objectRef);
+  }
+
+  /**
+   * Returns true if the data of the schema is always an array.
+   */
+  boolean wrapsArray() {
+    return dataType.equals(arrayRef);
+  }
+
+  /**
+   * Returns the type that generated classes wrap objects in, in the given mode.
+   */
+  static AbstractJClass objectRef(JCodeModel jCodeModel, String mode) {
+    return "org.json".equals(mode) ? jCodeModel.ref(JSONObject.class)
+                                   : jCodeModel.ref(Map.class).narrow(String.class, Object.class);
+  }
+
+  /**
+   * Returns the type that generated classes wrap arrays in, in the given mode.
+   */
+  static AbstractJClass arrayRef(JCodeModel jCodeModel, String mode) {
+    return "org.json".equals(mode) ? jCodeModel.ref(JSONArray.class)
+                                   : jCodeModel.ref(List.class).narrow(Object.class);
+  }
+
+  boolean isEnum() {
+    return isEnum;
+  }
+
+  Collection<AbstractJType> getCompatibleTypes() {
+    return compatibleTypes;
+  }
+
+  /**
+   * Returns the name of the method of the generated class that returns its data.
+   */
+  String getDataGetterName() {
+    return "get" + getDataTypeName(dataType);
+  }
+
+  boolean isDeclared() {
+    return declared;
+  }
+
+  /**
+   * Returns true if the schema will produce a class or enum once declared.
+   */
+  boolean definesClass() {
+    return isClass || isEnum;
+  }
+
+  Schema getSchema() {
+    return schema;
   }
 
   static String getDataTypeName(AbstractJType dataType) {
@@ -313,6 +676,14 @@ public class JavaBuilder {
       if (compatibleTypes.size() == 1) {
         writerPropertyGettersSingle(jCodeModel, holderClass, propertyName, defaultValue, isGet,
             nameForGetters, dataFieldAsJsonObject, compatibleTypes.iterator().next(), "");
+      } else if (javaCodeGenerator.getCompact()) {
+        // org.json has no get() with a default for values of any type.
+        if ("org.json".equals(mode)) {
+          defaultValue = null;
+          isGet = true;
+        }
+        writerPropertyGettersSingle(jCodeModel, holderClass, propertyName, defaultValue, isGet,
+            nameForGetters, dataFieldAsJsonObject, jCodeModel.ref(Object.class), "");
       } else {
         for (AbstractJType dataType : compatibleTypes) {
           writerPropertyGettersSingle(jCodeModel, holderClass, propertyName, defaultValue, isGet,
@@ -337,6 +708,7 @@ public class JavaBuilder {
     AbstractJType returnType = jDefinedClass == null ? dataType : jDefinedClass;
     JMethod getter = holderClass.method(JMod.PUBLIC, returnType,
         (returnType.equals(jCodeModel.BOOLEAN) ? "is" : "get") + nameForGetters + qualifier);
+    javaCodeGenerator.countAccess(holderClass, propertyName, getter);
     IJExpression getObject =
         JExpr
             .invoke(dataFieldAsJsonObject,
@@ -389,33 +761,48 @@ public class JavaBuilder {
     }
   }
 
+  /**
+   * Returns the name used in the getters of items of this builder's type. A builder shared between
+   * structurally identical schemas takes its class name from the first of them to be built, so
+   * getters are named after the referencing schema instead, which does not depend on build order.
+   */
+  private String getterNameFor(Schema referencing) {
+    return referencing.getUri().equals(schema.getUri()) ? _name : nameForSchema(referencing);
+  }
+
   private void writeItemGetters(JDefinedClass holderClass, int fixedPosition, JFieldVar dataField,
-      JCodeModel jCodeModel, IJExpression defaultValue) {
+      JCodeModel jCodeModel, IJExpression defaultValue, String nameForGetters) {
     IJExpression dataFieldAsJsonArray = castIfNeeded(arrayRef, dataField.type(), dataField);
 
     if (jDefinedClass == null) {
       if (compatibleTypes.size() == 1) {
         writeItemGettersSingle(jCodeModel, holderClass, defaultValue, fixedPosition,
-            dataFieldAsJsonArray, compatibleTypes.iterator().next(), "");
+            dataFieldAsJsonArray, compatibleTypes.iterator().next(), nameForGetters, "");
+      } else if (javaCodeGenerator.getCompact()) {
+        // org.json has no get() with a default for values of any type.
+        writeItemGettersSingle(jCodeModel, holderClass,
+            "org.json".equals(mode) ? null : defaultValue, fixedPosition, dataFieldAsJsonArray,
+            jCodeModel.ref(Object.class), nameForGetters, "");
       } else {
         for (AbstractJType dataType : compatibleTypes) {
           writeItemGettersSingle(jCodeModel, holderClass, defaultValue, fixedPosition,
-              dataFieldAsJsonArray, dataType, getDataTypeName(dataType));
+              dataFieldAsJsonArray, dataType, nameForGetters, getDataTypeName(dataType));
         }
       }
     } else {
       writeItemGettersSingle(jCodeModel, holderClass, defaultValue, fixedPosition,
-          dataFieldAsJsonArray, dataField.type(), "");
+          dataFieldAsJsonArray, dataField.type(), nameForGetters, "");
     }
   }
 
   private void writeItemGettersSingle(JCodeModel jCodeModel, JDefinedClass holderClass,
       IJExpression defaultValue, int fixedPosition, IJExpression dataFieldAsJsonArray,
-      AbstractJType dataType, String supplement) {
-    String nameForGetters = _name;
+      AbstractJType dataType, String nameForGetters, String supplement) {
     AbstractJType returnType = jDefinedClass == null ? dataType : jDefinedClass;
     JMethod getter = holderClass.method(JMod.PUBLIC, returnType,
         (returnType.equals(jCodeModel.BOOLEAN) ? "is" : "get") + nameForGetters + supplement);
+    javaCodeGenerator.countAccess(
+        holderClass, fixedPosition == -1 ? "items" : "items/" + fixedPosition, getter);
     IJExpression positionSource;
     if (fixedPosition == -1) {
       positionSource = getter.param(jCodeModel.INT, "index");
@@ -444,7 +831,19 @@ public class JavaBuilder {
       holderClass._implements(jCodeModel.ref(Iterable.class).narrow(returnType));
       AbstractJClass iteratorType = jCodeModel.ref(Iterator.class).narrow(returnType);
       JMethod iteratorMethod = holderClass.method(JMod.PUBLIC, iteratorType, "iterator");
-      JDefinedClass iteratorAnonClass = jCodeModel.anonymousClass(iteratorType);
+      if (javaCodeGenerator.getCompact() && fixedPosition == -1
+          && holderClass.getMethod("size", new AbstractJType[0]) != null) {
+        // The holder gives the shared iterator its items through the getter.
+        AbstractJClass itemIterator = javaCodeGenerator.getRuntimeClass("ItemIterator");
+        holderClass._implements(jCodeModel.directClass(itemIterator.fullName() + ".Items")
+                                    .narrow(returnType));
+        JMethod item = holderClass.method(JMod.PUBLIC, returnType.boxify(), "item");
+        item.annotate(Override.class);
+        item.body()._return(JExpr.invoke(getter).arg(item.param(jCodeModel.INT, "index")));
+        iteratorMethod.body()._return(JExpr._new(itemIterator.narrowEmpty()).arg(JExpr._this()));
+        return;
+      }
+      JDefinedClass iteratorAnonClass = javaCodeGenerator.anonymousClass(iteratorType);
       JVar nativeIterator =
           iteratorMethod.body().decl(jCodeModel.ref(Iterator.class).narrow(Object.class),
               "iterator", JExpr.invoke(dataFieldAsJsonArray, "iterator"));
@@ -0,0 +1,145 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.makeClassForSchema;
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.varyName;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.camelToSnake;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.lowerCaseFirst;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.makeJavaLegal;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JArray;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JVar;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.jimblackler.jsonschemafriend.Schema;
+
+/**
+ * Adds a nested Builder class to a class generated from an object schema, with a typed setter for
+ * each declared property. The builder's map is sized for the declared properties when it is
+ * created, so it never grows, and required properties are checked once, when it builds.
+ *
+ * In org.json mode the map is copied into a JSONObject when the builder builds, since a
+ * JSONObject can neither be sized by public API nor wrap an existing map; the copy is made once,
+ * and the builder's map is then dropped.
+ */
+class JavaBuilderClassBuilder {
+  private final JavaCodeGenerator javaCodeGenerator;
+  private final JavaBuilder javaBuilder;
+  private final JCodeModel jCodeModel;
+  private final boolean orgJson;
+
+  JavaBuilderClassBuilder(JavaCodeGenerator javaCodeGenerator, JavaBuilder javaBuilder) {
+    this.javaCodeGenerator = javaCodeGenerator;
+    this.javaBuilder = javaBuilder;
+    jCodeModel = javaCodeGenerator.getJCodeModel();
+    orgJson = "org.json".equals(javaCodeGenerator.getMode());
+  }
+
+  void build(Map<String, Schema> properties, Collection<String> requiredProperties)
+      throws CodeGenerationException {
+    JDefinedClass definedClass = javaBuilder.getDefinedClass();
+    String builderName = "Builder";
+    while (builderName.equals(definedClass.name())) {
+      builderName = varyName(builderName);
+    }
+    JDefinedClass builder = makeClassForSchema(builderName,
+        name -> definedClass._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, name));
+    builder.javadoc().add("Builds instances of " + definedClass.name()
+        + ". Each builder builds one instance; its data becomes the instance's data.");
+
+    AbstractJClass mapType = jCodeModel.ref(Map.class).narrow(String.class, Object.class);
+    JFieldVar data = builder.field(JMod.PRIVATE, mapType, "data",
+        JExpr._new(jCodeModel.ref(LinkedHashMap.class).narrowEmpty())
+            // The capacity at which the map holds every declared property without resizing.
+            .arg(JExpr.lit(properties.size() * 4 / 3 + 1)));
+    builder.constructor(JMod.PRIVATE);
+
+    JMethod factory = definedClass.method(JMod.PUBLIC | JMod.STATIC, builder, "builder");
+    factory.javadoc().add("Returns a builder of new instances.");
+    factory.body()._return(JExpr._new(builder));
+
+    // Setters put into the map through this method, which fails once the instance is built.
+    JMethod checkedData = builder.method(JMod.PRIVATE, mapType, "data");
+    checkedData.body()
+        ._if(data.eqNull())
+        ._then()
+        ._throw(JExpr._new(jCodeModel.ref(IllegalStateException.class))
+                    .arg("The instance has already been built"));
+    checkedData.body()._return(data);
+
+    Collection<String> fieldNames = new HashSet<>();
+    for (Map.Entry<String, Schema> entry : properties.entrySet()) {
+      String propertyName = entry.getKey();
+      JavaBuilder propertyBuilder = javaCodeGenerator.get(entry.getValue());
+      String setterName = "set" + NameUtils.snakeToCamel(propertyName);
+      String paramName = makeJavaLegal(lowerCaseFirst(NameUtils.snakeToCamel(propertyName)));
+      if (propertyBuilder.isClass()) {
+        JMethod setter = builder.method(JMod.PUBLIC, builder, setterName);
+        JVar param = setter.param(propertyBuilder.getDefinedClass(), paramName);
+        put(setter, checkedData, propertyName, param.invoke(propertyBuilder.getDataGetterName()));
+      } else if (propertyBuilder.isEnum()) {
+        // Enum constants are declared in the order of the schema's values, so their ordinals index
+        // an array of the values.
+        String fieldName = makeJavaLegal(camelToSnake(propertyName).toUpperCase() + "_VALUES");
+        while (!fieldNames.add(fieldName)) {
+          fieldName = varyName(fieldName);
+        }
+        JArray values = JExpr.newArray(jCodeModel.ref(String.class));
+        for (Object value : propertyBuilder.getSchema().getEnums()) {
+          values.add(JExpr.lit((String) value));
+        }
+        JFieldVar valuesField = builder.field(
+            JMod.PRIVATE | JMod.STATIC | JMod.FINAL, String[].class, fieldName, values);
+        JMethod setter = builder.method(JMod.PUBLIC, builder, setterName);
+        JVar param = setter.param(propertyBuilder.getDefinedClass(), paramName);
+        put(setter, checkedData, propertyName, valuesField.component(param.invoke("ordinal")));
+      } else {
+        for (AbstractJType type : propertyBuilder.getCompatibleTypes()) {
+          if (type.equals(jCodeModel.NULL)) {
+            continue;
+          }
+          JMethod setter = builder.method(JMod.PUBLIC, builder, setterName);
+          put(setter, checkedData, propertyName, setter.param(type, paramName));
+        }
+      }
+    }
+
+    JMethod build = builder.method(JMod.PUBLIC, definedClass, "build");
+    build.javadoc().add("Returns the instance.");
+    build.javadoc()
+        .addThrows(IllegalStateException.class)
+        .add("If a required property is not set.");
+    JVar built = build.body().decl(mapType, "built", JExpr.invoke(checkedData));
+    for (String required : requiredProperties) {
+      if (!properties.containsKey(required)) {
+        continue;
+      }
+      build.body()
+          ._if(built.invoke("containsKey").arg(required).not())
+          ._then()
+          ._throw(JExpr._new(jCodeModel.ref(IllegalStateException.class))
+                      .arg("Required property " + required + " is not set"));
+    }
+    build.body().assign(data, JExpr._null());
+    IJExpression wrapped = orgJson ? JExpr._new(javaBuilder.getDataType()).arg(built) : built;
+    build.body()._return(JExpr._new(definedClass).arg(wrapped));
+  }
+
+  private static void put(
+      JMethod setter, JMethod checkedData, String propertyName, IJExpression value) {
+    JBlock body = setter.body();
+    body.add(JExpr.invoke(checkedData).invoke("put").arg(propertyName).arg(value));
+    body._return(JExpr._this());
+  }
+}
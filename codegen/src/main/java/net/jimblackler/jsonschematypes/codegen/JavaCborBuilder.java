@@ -0,0 +1,166 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.varyName;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.camelToSnake;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.makeJavaLegal;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCatchBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JForEach;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JTryBlock;
+import com.helger.jcodemodel.JVar;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import net.jimblackler.jsonschemafriend.Schema;
+import org.json.JSONObject;
+
+/**
+ * Adds CBOR encoding and decoding methods to a class generated from an object schema. The names of
+ * the declared properties are encoded once, into static fields, and the values of properties that
+ * have their own generated class are written by that class.
+ */
+class JavaCborBuilder {
+  private final JavaCodeGenerator javaCodeGenerator;
+  private final JavaBuilder javaBuilder;
+  private final JCodeModel jCodeModel;
+  private final boolean orgJson;
+
+  JavaCborBuilder(JavaCodeGenerator javaCodeGenerator, JavaBuilder javaBuilder) {
+    this.javaCodeGenerator = javaCodeGenerator;
+    this.javaBuilder = javaBuilder;
+    jCodeModel = javaCodeGenerator.getJCodeModel();
+    orgJson = "org.json".equals(javaCodeGenerator.getMode());
+  }
+
+  void build(Map<String, Schema> properties) throws CodeGenerationException {
+    JDefinedClass definedClass = javaBuilder.getDefinedClass();
+    AbstractJClass writerClass = javaCodeGenerator.getRuntimeClass("CborWriter");
+    AbstractJClass readerClass = javaCodeGenerator.getRuntimeClass("CborReader");
+    JFieldVar data = javaBuilder.getDataField();
+
+    JFieldVar declared = definedClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+        jCodeModel.ref(Set.class).narrow(String.class), "CBOR_DECLARED");
+    JInvocation asList = jCodeModel.ref(Arrays.class).staticInvoke("asList");
+    declared.init(JExpr._new(jCodeModel.ref(HashSet.class).narrowEmpty()).arg(asList));
+
+    JMethod writeCbor = definedClass.method(JMod.PUBLIC, jCodeModel.VOID, "writeCbor");
+    writeCbor.javadoc().add("Writes the data as a CBOR map. Declared properties are written "
+        + "first, with their names encoded in advance.");
+    writeCbor._throws(IOException.class);
+    JVar writer = writeCbor.param(writerClass, "writer");
+    JBlock body = writeCbor.body();
+    body.add(writer.invoke("writeMapHeader").arg(data.invoke(orgJson ? "length" : "size")));
+
+    // Key fields must not take the name of the set of declared names, as for a property called
+    // "declared".
+    Collection<String> fieldNames = new HashSet<>();
+    fieldNames.add(declared.name());
+    boolean castsMap = false;
+    for (Map.Entry<String, Schema> entry : properties.entrySet()) {
+      String propertyName = entry.getKey();
+      asList.arg(JExpr.lit(propertyName));
+
+      String fieldName = makeJavaLegal("CBOR_" + camelToSnake(propertyName).toUpperCase());
+      while (!fieldNames.add(fieldName)) {
+        fieldName = varyName(fieldName);
+      }
+      JFieldVar key = definedClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, byte[].class,
+          fieldName, writerClass.staticInvoke("key").arg(propertyName));
+
+      JBlock then = body._if(data.invoke(orgJson ? "has" : "containsKey").arg(propertyName))
+                        ._then();
+      then.add(writer.invoke("writeRaw").arg(key));
+      IJExpression value = data.invoke(orgJson ? "opt" : "get").arg(propertyName);
+      JavaBuilder propertyBuilder = javaCodeGenerator.get(entry.getValue());
+      if (propertyBuilder.isClass() && propertyBuilder.wrapsObject()) {
+        // The property's own class writes its value, with its own precomputed names.
+        JVar valueVar = then.decl(jCodeModel.ref(Object.class), "value", value);
+        JConditional isObject = then._if(valueVar._instanceof(
+            orgJson ? jCodeModel.ref(JSONObject.class) : jCodeModel.ref(Map.class)));
+        isObject._then().add(JExpr._new(propertyBuilder.getDefinedClass())
+                                 .arg(valueVar.castTo(propertyBuilder.getDataType()))
+                                 .invoke("writeCbor")
+                                 .arg(writer));
+        isObject._else().add(writer.invoke("writeValue").arg(valueVar));
+        castsMap = !orgJson;
+      } else {
+        then.add(writer.invoke("writeValue").arg(value));
+      }
+    }
+
+    if (orgJson) {
+      JForEach forEach = body.forEach(jCodeModel.ref(String.class), "key", data.invoke("keySet"));
+      JBlock undeclared = forEach.body()._if(declared.invoke("contains").arg(forEach.var()).not())
+                              ._then();
+      undeclared.add(writer.invoke("writeString").arg(forEach.var()));
+      undeclared.add(writer.invoke("writeValue").arg(data.invoke("opt").arg(forEach.var())));
+    } else {
+      JForEach forEach = body.forEach(
+          jCodeModel.ref(Map.Entry.class).narrow(String.class, Object.class), "entry",
+          data.invoke("entrySet"));
+      JBlock undeclared =
+          forEach.body()
+              ._if(declared.invoke("contains").arg(forEach.var().invoke("getKey")).not())
+              ._then();
+      undeclared.add(writer.invoke("writeString").arg(forEach.var().invoke("getKey")));
+      undeclared.add(writer.invoke("writeValue").arg(forEach.var().invoke("getValue")));
+    }
+    if (castsMap) {
+      writeCbor.annotate(SuppressWarnings.class).param("value", "unchecked");
+    }
+
+    JMethod toCbor = definedClass.method(JMod.PUBLIC, byte[].class, "toCbor");
+    toCbor.javadoc().add("Returns the data encoded as CBOR.");
+    JVar out = toCbor.body().decl(jCodeModel.ref(ByteArrayOutputStream.class), "out",
+        JExpr._new(jCodeModel.ref(ByteArrayOutputStream.class)));
+    JTryBlock tryBlock = toCbor.body()._try();
+    JVar newWriter =
+        tryBlock.body().decl(writerClass, "writer", JExpr._new(writerClass).arg(out));
+    tryBlock.body().add(JExpr.invoke(writeCbor).arg(newWriter));
+    tryBlock.body().add(newWriter.invoke("flush"));
+    // Writing to memory does not fail, so there is no checked exception to declare.
+    JCatchBlock catchBlock = tryBlock._catch(jCodeModel.ref(IOException.class));
+    JVar exception = catchBlock.param("e");
+    catchBlock.body()._throw(
+        JExpr._new(jCodeModel.ref(UncheckedIOException.class)).arg(exception));
+    toCbor.body()._return(out.invoke("toByteArray"));
+
+    JMethod readCbor =
+        definedClass.method(JMod.PUBLIC | JMod.STATIC, definedClass, "readCbor");
+    readCbor.javadoc().add("Reads an instance from a CBOR map.");
+    readCbor._throws(IOException.class);
+    JVar reader = readCbor.param(readerClass, "reader");
+    if (!orgJson) {
+      readCbor.annotate(SuppressWarnings.class).param("value", "unchecked");
+    }
+    readCbor.body()._return(JExpr._new(definedClass).arg(
+        reader.invoke("readMap").castTo(javaBuilder.getDataType())));
+
+    JMethod fromCbor =
+        definedClass.method(JMod.PUBLIC | JMod.STATIC, definedClass, "fromCbor");
+    fromCbor.javadoc().add("Reads an instance from CBOR data.");
+    fromCbor._throws(IOException.class);
+    JVar bytes = fromCbor.param(byte[].class, "bytes");
+    fromCbor.body()._return(JExpr.invoke(readCbor).arg(
+        JExpr._new(readerClass)
+            .arg(JExpr._new(jCodeModel.ref(ByteArrayInputStream.class)).arg(bytes))
+            .arg(javaCodeGenerator.getStringTable(javaBuilder))));
+  }
+}
@@ -1,33 +1,82 @@
 package net.jimblackler.jsonschematypes.codegen;
 
+import static net.jimblackler.jsonschemafriend.StreamUtils.streamToString;
 import static net.jimblackler.jsonschematypes.codegen.NameUtils.makeJavaLegalPackage;
 
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.IJExpression;
 import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
 import com.helger.jcodemodel.JPackage;
+import com.helger.jcodemodel.fmt.JTextFile;
 import com.helger.jcodemodel.writer.AbstractCodeWriter;
 import com.helger.jcodemodel.writer.FileCodeWriter;
 import com.helger.jcodemodel.writer.JCMWriter;
 import com.helger.jcodemodel.writer.OutputStreamCodeWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
 import net.jimblackler.jsonschemafriend.Schema;
 
 public class JavaCodeGenerator implements CodeGenerator {
+  // Support classes used by generated code are written to this sub-package of the output package.
+  private static final String RUNTIME_PACKAGE = "runtime";
   private final Map<URI, JavaBuilder> builtClasses = new HashMap<>();
+  private final Map<String, JavaBuilder> builtShapes = new HashMap<>();
+  private final Queue<JavaBuilder> pending = new ArrayDeque<>();
   private final JCodeModel jCodeModel = new JCodeModel();
   private final JPackage jPackage;
   private final String mode;
+  private final Set<String> reservedClassNames = new HashSet<>();
+  private final Map<String, AbstractJClass> runtimeClasses = new HashMap<>();
+  private final Map<JDefinedClass, JFieldVar> stringTables = new HashMap<>();
+  private final Map<JFieldVar, Collection<JavaBuilder>> stringTableUsers = new LinkedHashMap<>();
+  private final Collection<JDefinedClass> anonymousClasses = new ArrayList<>();
+  private final Map<JDefinedClass, CounterGroup> counterGroups = new LinkedHashMap<>();
+  private final Map<String, JavaRegistryBuilder.Entry> registryEntries = new TreeMap<>();
+  private SchemaShapes schemaShapes;
+  private String registryClassName;
+  private boolean registryBuilt;
+  private boolean streamReaders;
+  private boolean projections;
+  private boolean cborCodecs;
+  private boolean builders;
+  private boolean columnBatches;
+  private boolean compact;
+  private boolean accessCounters;
+  private boolean equalityMethods;
 
   public JavaCodeGenerator(String packageName, String mode) {
     jPackage = jCodeModel._package(makeJavaLegalPackage(packageName));
     this.mode = mode;
   }
 
+  /**
+   * Returns the builder for the schema, creating it if needed. Newly created builders are queued
+   * and will not have declared their class until {@link #process()} has run.
+   */
   JavaBuilder get(Schema schema) throws CodeGenerationException {
     if (schema == null) {
       return null;
@@ -37,7 +86,305 @@ public class JavaCodeGenerator implements CodeGenerator {
       return builtClasses.get(uri);
     }
 
-    return new JavaBuilder(this, schema, mode);
+    if (schemaShapes == null || schema.getParent() == null) {
+      return create(schema);
+    }
+
+    String shape = schemaShapes.keyFor(schema);
+    JavaBuilder existing = builtShapes.get(shape);
+    if (existing != null) {
+      register(uri, existing);
+      existing.addSharedUri(uri);
+      return existing;
+    }
+    JavaBuilder javaBuilder = create(schema);
+    if (javaBuilder.definesClass()) {
+      builtShapes.putIfAbsent(shape, javaBuilder);
+    }
+    return javaBuilder;
+  }
+
+  private JavaBuilder create(Schema schema) {
+    JavaBuilder javaBuilder = new JavaBuilder(this, schema, mode);
+    pending.add(javaBuilder);
+    return javaBuilder;
+  }
+
+  /**
+   * Declares the classes of all queued builders and of every builder they reference, then writes
+   * their accessors. The graph of builders is walked with a work queue rather than by recursion, so
+   * that very deep schemas cannot overflow the stack. Cycles are handled by the registry of builders:
+   * a schema that is reached again resolves to its existing builder, and is not queued twice.
+   */
+  void process() throws CodeGenerationException {
+    List<JavaBuilder> declared = new ArrayList<>();
+    while (!pending.isEmpty()) {
+      JavaBuilder javaBuilder = pending.poll();
+      if (javaBuilder.isDeclared()) {
+        continue;
+      }
+
+      // Classes are nested in the class of their parent schema, so undeclared ancestors are
+      // declared first, outermost first.
+      Deque<JavaBuilder> ancestry = new ArrayDeque<>();
+      for (JavaBuilder builder = javaBuilder; builder != null && !builder.isDeclared();
+           builder = get(builder.getSchema().getParent())) {
+        ancestry.push(builder);
+      }
+      while (!ancestry.isEmpty()) {
+        JavaBuilder builder = ancestry.pop();
+        builder.declare();
+        declared.add(builder);
+        for (Schema referenced : builder.getReferencedSchemas()) {
+          get(referenced);
+        }
+      }
+    }
+
+    for (JavaBuilder javaBuilder : declared) {
+      javaBuilder.writeAccessors();
+    }
+  }
+
+  /**
+   * Sets whether inline sub-schemas with the same structure should share a single generated type,
+   * rather than each producing its own nested class. Top-level schemas are never merged.
+   *
+   * @param deduplicate true to merge structurally identical sub-schemas.
+   */
+  public void setDeduplicate(boolean deduplicate) {
+    schemaShapes = deduplicate ? new SchemaShapes() : null;
+  }
+
+  /**
+   * Sets the name of a class to generate alongside the types, which maps the URI of each schema to
+   * the class generated from it. The class offers switch-based lookups, {@code typeFor(uri)},
+   * {@code factoryFor(uri)} and {@code wrap(uri, data)}, that need no reflection.
+   *
+   * @param registryClassName The simple name of the class, or null to generate no registry.
+   */
+  public void setRegistryClassName(String registryClassName) {
+    this.registryClassName = registryClassName;
+  }
+
+  String getRegistryClassName() {
+    return registryClassName;
+  }
+
+  /**
+   * Adds the classes generated by another generator to the registry of this one. This allows one
+   * registry to cover schema sets that are generated in partitions, each by its own generator,
+   * into the same package. The generators should be in the same mode. The classes are referred to
+   * by name, so the other generator need not be kept once this has been called.
+   *
+   * @param javaCodeGenerator The other generator, after its schemas are built.
+   */
+  public void addToRegistry(JavaCodeGenerator javaCodeGenerator) {
+    addToRegistry(javaCodeGenerator.getRegistryEntries());
+  }
+
+  void addToRegistry(Map<String, JavaRegistryBuilder.Entry> entries) {
+    registryEntries.putAll(entries);
+  }
+
+  /**
+   * Returns the classes generated from each schema URI, as they would appear in a registry.
+   */
+  Map<String, JavaRegistryBuilder.Entry> getRegistryEntries() {
+    Map<String, JavaRegistryBuilder.Entry> entries = new TreeMap<>();
+    for (Map.Entry<URI, JavaBuilder> entry : builtClasses.entrySet()) {
+      JavaBuilder javaBuilder = entry.getValue();
+      if (!javaBuilder.isClass()) {
+        continue;
+      }
+      String uri = entry.getKey().toString();
+      JavaRegistryBuilder.Entry registryEntry = new JavaRegistryBuilder.Entry(javaBuilder);
+      entries.put(uri, registryEntry);
+      // Root schemas may be looked up with or without an empty fragment.
+      if (uri.endsWith("#")) {
+        entries.putIfAbsent(uri.substring(0, uri.length() - 1), registryEntry);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Sets whether each class generated from a top-level schema should have a static
+   * {@code records(InputStream)} method. It reads instances one at a time from newline-delimited
+   * JSON, or from a top-level JSON array, so that large files can be processed in constant memory.
+   *
+   * @param streamReaders true to generate the methods.
+   */
+  public void setStreamReaders(boolean streamReaders) {
+    this.streamReaders = streamReaders;
+  }
+
+  boolean getStreamReaders() {
+    return streamReaders;
+  }
+
+  /**
+   * Sets whether classes generated from top-level object schemas should have a {@code Field} enum
+   * of their properties, and a static {@code decode(InputStream, Collection<Field>)} method that
+   * reads only the chosen properties. The values of other properties are skipped without being
+   * decoded, which saves time and memory when a few properties are read from wide documents.
+   * With stream readers, {@code records(InputStream, Collection<Field>)} is also generated. The
+   * enum is named {@code Field2} in a class that is itself named {@code Field}; a nested class of
+   * a property that would be named {@code Field} is given another name.
+   *
+   * @param projections true to generate the enums and methods.
+   */
+  public void setProjections(boolean projections) {
+    this.projections = projections;
+  }
+
+  boolean getProjections() {
+    return projections;
+  }
+
+  /**
+   * Sets whether classes generated from object schemas should have methods to encode and decode
+   * their data as CBOR: {@code writeCbor(CborWriter)}, {@code toCbor()}, and the static
+   * {@code readCbor(CborReader)} and {@code fromCbor(byte[])}.
+   *
+   * @param cborCodecs true to generate the methods.
+   */
+  public void setCborCodecs(boolean cborCodecs) {
+    this.cborCodecs = cborCodecs;
+  }
+
+  boolean getCborCodecs() {
+    return cborCodecs;
+  }
+
+  /**
+   * Sets whether classes generated from object schemas should have a nested {@code Builder}
+   * class, made by a static {@code builder()} method, with a typed setter for each declared
+   * property. The builder's storage is sized for the declared properties, and {@code build()}
+   * checks that the required properties are set.
+   *
+   * @param builders true to generate the builders.
+   */
+  public void setBuilders(boolean builders) {
+    this.builders = builders;
+  }
+
+  boolean getBuilders() {
+    return builders;
+  }
+
+  /**
+   * Sets whether classes generated from object schemas with scalar properties should have a nested
+   * {@code Columns} class. It stores the integer, number, boolean, string and enum properties of a
+   * batch of records in primitive arrays, one per property, with null bitmaps and dictionary-encoded
+   * strings. Batches are made with {@code fromRecords(Collection)} or, without creating records,
+   * {@code fromNdjson(InputStream)}.
+   *
+   * @param columnBatches true to generate the classes.
+   */
+  public void setColumnBatches(boolean columnBatches) {
+    this.columnBatches = columnBatches;
+  }
+
+  boolean getColumnBatches() {
+    return columnBatches;
+  }
+
+  /**
+   * Sets whether to generate fewer classes and methods, for platforms where they are costly, such
+   * as Android. Properties and items that can have several types get a single getter that returns
+   * the raw value as an Object, rather than one getter for each type. Array classes share one
+   * iterator class from the runtime package, rather than each declaring its own.
+   *
+   * @param compact true to generate compact code.
+   */
+  public void setCompact(boolean compact) {
+    this.compact = compact;
+  }
+
+  boolean getCompact() {
+    return compact;
+  }
+
+  /**
+   * Sets whether generated classes should count their constructions and property reads, in sampled
+   * counters of the runtime AccessCounters class. {@code AccessCounters.snapshot()} returns the
+   * counts, keyed by schema URI and property name. Without this option no counting code is
+   * generated at all.
+   *
+   * @param accessCounters true to generate the counters.
+   */
+  public void setAccessCounters(boolean accessCounters) {
+    this.accessCounters = accessCounters;
+  }
+
+  boolean getAccessCounters() {
+    return accessCounters;
+  }
+
+  /**
+   * Sets whether generated classes should have equals() and hashCode() methods that compare their
+   * data by value. Off by default, as it changes how existing instances behave as map keys: a
+   * mutable instance changed after it was added to a HashMap would no longer be found.
+   *
+   * @param equalityMethods true to generate the methods.
+   */
+  public void setEqualityMethods(boolean equalityMethods) {
+    this.equalityMethods = equalityMethods;
+  }
+
+  boolean getEqualityMethods() {
+    return equalityMethods;
+  }
+
+  /**
+   * Returns the number of classes and methods generated so far, counting nested and anonymous
+   * classes, but not the support classes of the runtime package. See {@link CodeSize} for what is
+   * counted. The registry, if there is one, is built by the first call, so the count matches the
+   * output; call this once all the schemas are built.
+   */
+  public CodeSize getCodeSize() {
+    buildRegistryOnce();
+    Collection<JDefinedClass> definedClasses = new ArrayList<>(anonymousClasses);
+    Deque<JDefinedClass> queue = new ArrayDeque<>(jPackage.classes());
+    while (!queue.isEmpty()) {
+      JDefinedClass definedClass = queue.poll();
+      definedClasses.add(definedClass);
+      queue.addAll(definedClass.classes());
+    }
+    int methodCount = 0;
+    for (JDefinedClass definedClass : definedClasses) {
+      methodCount += definedClass.methods().size();
+      for (Iterator<JMethod> it = definedClass.constructors(); it.hasNext(); it.next()) {
+        methodCount++;
+      }
+    }
+    return new CodeSize(definedClasses.size(), methodCount);
+  }
+
+  /**
+   * Prevents top-level classes being generated with the given names, for example because classes
+   * of those names were generated from another partition into the same package.
+   *
+   * @param classNames The names to avoid.
+   */
+  public void reserveClassNames(Collection<String> classNames) {
+    reservedClassNames.addAll(classNames);
+  }
+
+  boolean isReservedClassName(String className) {
+    return reservedClassNames.contains(className);
+  }
+
+  /**
+   * Returns the names of the top-level classes generated so far.
+   */
+  public Collection<String> getTopLevelClassNames() {
+    Collection<String> classNames = new ArrayList<>();
+    for (JDefinedClass definedClass : jPackage.classes()) {
+      classNames.add(definedClass.name());
+    }
+    return classNames;
   }
 
   public void register(URI uri, JavaBuilder javaBuilder) {
@@ -54,12 +401,212 @@ public class JavaCodeGenerator implements CodeGenerator {
         path.toFile(), StandardCharsets.UTF_8, System.getProperty("line.separator")));
   }
 
+  public void output(AbstractCodeWriter writer) throws IOException {
+    _output(writer);
+  }
+
   private void _output(AbstractCodeWriter writer) throws IOException {
+    buildRegistryOnce();
+    writeStringTables();
+    writeCounterGroups();
     JCMWriter jcmWriter = new JCMWriter(jCodeModel);
     jcmWriter.setIndentString("\t");
     jcmWriter.build(writer, writer);
   }
 
+  /**
+   * Builds the registry from the classes generated so far, unless it is already built. It is built
+   * late, by whichever of getCodeSize() and output is called first, so that it sees every class.
+   */
+  private void buildRegistryOnce() {
+    if (registryClassName == null || registryBuilt) {
+      return;
+    }
+    registryBuilt = true;
+    Map<String, JavaRegistryBuilder.Entry> entries = new TreeMap<>(registryEntries);
+    entries.putAll(getRegistryEntries());
+    new JavaRegistryBuilder(this, registryClassName).build(entries);
+  }
+
+  /**
+   * Returns a reference to a support class used by generated code. The source of the class is
+   * bundled with this library, and is added to the runtime sub-package of the output the first time
+   * the class is requested. Lines of the form "//#requires Name" in the source pull in other support
+   * classes. Lines starting "//#org.json" are only kept in org.json mode, and lines starting
+   * "//#map" only in the other modes, so that support classes need org.json only when the
+   * generated code does.
+   *
+   * @param name The simple name of the support class.
+   * @return A reference to the class.
+   */
+  AbstractJClass getRuntimeClass(String name) {
+    AbstractJClass runtimeClass = runtimeClasses.get(name);
+    if (runtimeClass != null) {
+      return runtimeClass;
+    }
+    JPackage runtimePackage = jPackage.subPackage(RUNTIME_PACKAGE);
+    runtimeClass = jCodeModel.directClass(
+        (runtimePackage.name().isEmpty() ? "" : runtimePackage.name() + ".") + name);
+    runtimeClasses.put(name, runtimeClass);
+
+    String template;
+    try (InputStream stream =
+             JavaCodeGenerator.class.getResourceAsStream("runtime/" + name + ".java.txt")) {
+      template = streamToString(stream);
+    } catch (IOException e) {
+      // The templates are bundled with the library, so this is not expected.
+      throw new IllegalStateException(e);
+    }
+
+    StringBuilder source = new StringBuilder();
+    if (!runtimePackage.name().isEmpty()) {
+      source.append("package ").append(runtimePackage.name()).append(";\n\n");
+    }
+    for (String line : template.split("\n", -1)) {
+      if (line.startsWith("//#requires ")) {
+        getRuntimeClass(line.substring("//#requires ".length()).trim());
+        continue;
+      }
+      if (line.startsWith("//#org.json")) {
+        if ("org.json".equals(mode)) {
+          source.append(stripDirective(line, "//#org.json")).append("\n");
+        }
+        continue;
+      }
+      if (line.startsWith("//#map")) {
+        if (!"org.json".equals(mode)) {
+          source.append(stripDirective(line, "//#map")).append("\n");
+        }
+        continue;
+      }
+      source.append(line).append("\n");
+    }
+    runtimePackage.addResourceFile(
+        JTextFile.createFully(name + ".java", StandardCharsets.UTF_8, source.toString().trim()));
+    return runtimeClass;
+  }
+
+  /**
+   * Returns a reference to the table of known strings for the decoders of the builder's class. One
+   * table is shared by all the classes in the same top-level class. It holds the property names and
+   * string enum values of every schema reachable from the classes that use it, and is filled in
+   * when the code is output, once all the schemas are known.
+   */
+  IJExpression getStringTable(JavaBuilder javaBuilder) {
+    JDefinedClass outermost = javaBuilder.getDefinedClass();
+    while (outermost.outer() instanceof JDefinedClass) {
+      outermost = (JDefinedClass) outermost.outer();
+    }
+    JFieldVar field = stringTables.get(outermost);
+    if (field == null) {
+      field = outermost.field(
+          JMod.PRIVATE | JMod.STATIC | JMod.FINAL, getRuntimeClass("StringTable"), "STRINGS");
+      stringTables.put(outermost, field);
+      stringTableUsers.put(field, new LinkedHashSet<>());
+    }
+    stringTableUsers.get(field).add(javaBuilder);
+    return outermost.staticRef(field);
+  }
+
+  private void writeStringTables() {
+    for (Map.Entry<JFieldVar, Collection<JavaBuilder>> entry : stringTableUsers.entrySet()) {
+      Collection<String> strings = new LinkedHashSet<>();
+      Set<JavaBuilder> visited = new HashSet<>();
+      Queue<JavaBuilder> queue = new ArrayDeque<>(entry.getValue());
+      while (!queue.isEmpty()) {
+        JavaBuilder javaBuilder = queue.poll();
+        if (!visited.add(javaBuilder)) {
+          continue;
+        }
+        javaBuilder.addKnownStrings(strings);
+        // Every referenced schema has a builder by now, as processing created them all.
+        for (Schema referenced : javaBuilder.getReferencedSchemas()) {
+          JavaBuilder referencedBuilder = builtClasses.get(referenced.getUri());
+          if (referencedBuilder != null) {
+            queue.add(referencedBuilder);
+          }
+        }
+      }
+      JInvocation table = JExpr._new(getRuntimeClass("StringTable"));
+      for (String string : strings) {
+        table.arg(JExpr.lit(string));
+      }
+      entry.getKey().init(table);
+    }
+  }
+
+  /**
+   * Adds access counters to a class, and counts each construction. The counters are registered
+   * when the code is output, once every counted property is known.
+   */
+  void countAccesses(JavaBuilder javaBuilder) {
+    JDefinedClass definedClass = javaBuilder.getDefinedClass();
+    JFieldVar field = definedClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+        jCodeModel.directClass(getRuntimeClass("AccessCounters").fullName() + ".Group"),
+        "ACCESS_COUNTERS");
+    for (Iterator<JMethod> it = definedClass.constructors(); it.hasNext();) {
+      it.next().body().add(field.invoke("constructed"));
+    }
+    counterGroups.put(definedClass, new CounterGroup(field, javaBuilder.getSchema().getUri()));
+  }
+
+  /**
+   * Counts each call of a getter, as a read of the property. Does nothing if the class has no
+   * counters. Must be called before anything else is added to the getter.
+   */
+  void countAccess(JDefinedClass definedClass, String key, JMethod getter) {
+    CounterGroup counterGroup = counterGroups.get(definedClass);
+    if (counterGroup == null) {
+      return;
+    }
+    int slot = counterGroup.keys.indexOf(key);
+    if (slot == -1) {
+      slot = counterGroup.keys.size();
+      counterGroup.keys.add(key);
+    }
+    getter.body().add(counterGroup.field.invoke("count").arg(JExpr.lit(slot)));
+  }
+
+  private void writeCounterGroups() {
+    for (CounterGroup counterGroup : counterGroups.values()) {
+      JInvocation group = getRuntimeClass("AccessCounters").staticInvoke("group").arg(
+          counterGroup.uri.toString());
+      for (String key : counterGroup.keys) {
+        group.arg(JExpr.lit(key));
+      }
+      counterGroup.field.init(group);
+    }
+  }
+
+  /**
+   * Creates an anonymous class, recording it so that it is counted by {@link #getCodeSize()}.
+   */
+  JDefinedClass anonymousClass(AbstractJClass baseType) {
+    JDefinedClass anonymousClass = jCodeModel.anonymousClass(baseType);
+    anonymousClasses.add(anonymousClass);
+    return anonymousClass;
+  }
+
+  private static class CounterGroup {
+    final JFieldVar field;
+    final URI uri;
+    final List<String> keys = new ArrayList<>();
+
+    CounterGroup(JFieldVar field, URI uri) {
+      this.field = field;
+      this.uri = uri;
+    }
+  }
+
+  private static String stripDirective(String line, String directive) {
+    String rest = line.substring(directive.length());
+    return rest.startsWith(" ") ? rest.substring(1) : rest;
+  }
+
+  String getMode() {
+    return mode;
+  }
+
   public JCodeModel getJCodeModel() {
     return jCodeModel;
   }
@@ -71,5 +618,6 @@ public class JavaCodeGenerator implements CodeGenerator {
   @Override
   public void build(Schema schema) throws CodeGenerationException {
     get(schema);
+    process();
   }
 }
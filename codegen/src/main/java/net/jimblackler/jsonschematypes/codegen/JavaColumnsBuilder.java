@@ -0,0 +1,180 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.makeClassForSchema;
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.varyName;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.lowerCaseFirst;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.makeJavaLegal;
+import static net.jimblackler.jsonschematypes.codegen.NameUtils.snakeToCamel;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JForEach;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JTryBlock;
+import com.helger.jcodemodel.JVar;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import net.jimblackler.jsonschemafriend.Schema;
+
+/**
+ * Adds a nested Columns class to a class generated from an object schema, which stores the scalar
+ * properties of a batch of records in primitive arrays, one per property. Properties of other
+ * types are left out.
+ */
+class JavaColumnsBuilder {
+  private final JavaCodeGenerator javaCodeGenerator;
+  private final JavaBuilder javaBuilder;
+  private final JCodeModel jCodeModel;
+
+  JavaColumnsBuilder(JavaCodeGenerator javaCodeGenerator, JavaBuilder javaBuilder) {
+    this.javaCodeGenerator = javaCodeGenerator;
+    this.javaBuilder = javaBuilder;
+    jCodeModel = javaCodeGenerator.getJCodeModel();
+  }
+
+  void build(Map<String, Schema> properties) throws CodeGenerationException {
+    AbstractJClass batchClass = javaCodeGenerator.getRuntimeClass("ColumnBatch");
+    Map<String, AbstractJClass> columnTypes = new LinkedHashMap<>();
+    Map<String, JavaBuilder> enumBuilders = new LinkedHashMap<>();
+    for (Map.Entry<String, Schema> entry : properties.entrySet()) {
+      JavaBuilder propertyBuilder = javaCodeGenerator.get(entry.getValue());
+      if (propertyBuilder.isClass()) {
+        continue;
+      }
+      String columnName = columnName(propertyBuilder.getDataType());
+      if (columnName == null) {
+        continue;
+      }
+      columnTypes.put(
+          entry.getKey(), jCodeModel.directClass(batchClass.fullName() + "." + columnName));
+      if (propertyBuilder.isEnum()) {
+        enumBuilders.put(entry.getKey(), propertyBuilder);
+      }
+    }
+    if (columnTypes.isEmpty()) {
+      return;
+    }
+
+    JDefinedClass definedClass = javaBuilder.getDefinedClass();
+    String className = "Columns";
+    while (className.equals(definedClass.name())) {
+      className = varyName(className);
+    }
+    JDefinedClass columns = makeClassForSchema(className,
+        name -> definedClass._class(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, name));
+    columns._extends(batchClass);
+    columns.javadoc().add("The scalar properties of a batch of " + definedClass.name()
+        + " records, stored by column.");
+
+    JFieldVar keys = columns.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+        jCodeModel.ref(Set.class).narrow(String.class), "KEYS");
+    JInvocation asList = jCodeModel.ref(Arrays.class).staticInvoke("asList");
+    keys.init(JExpr._new(jCodeModel.ref(HashSet.class).narrowEmpty()).arg(asList));
+
+    JMethod constructor = columns.constructor(JMod.PUBLIC);
+    JVar capacity = constructor.param(jCodeModel.INT, "capacity");
+    constructor.javadoc().addParam(capacity).add("The number of rows to allocate for.");
+    constructor.body().add(JExpr.invokeSuper().arg(capacity));
+
+    JMethod addData = columns.method(JMod.PRIVATE, jCodeModel.VOID, "addData");
+    JVar data = addData.param(Object.class, "data");
+    JVar row = addData.body().decl(jCodeModel.INT, "row", JExpr.invoke("addRow"));
+
+    Collection<String> fieldNames = new HashSet<>();
+    for (Map.Entry<String, AbstractJClass> entry : columnTypes.entrySet()) {
+      String propertyName = entry.getKey();
+      asList.arg(JExpr.lit(propertyName));
+      String fieldName = makeJavaLegal(lowerCaseFirst(snakeToCamel(propertyName)));
+      while (!fieldNames.add(fieldName)) {
+        fieldName = varyName(fieldName);
+      }
+      JFieldVar column = columns.field(JMod.PUBLIC | JMod.FINAL, entry.getValue(), fieldName);
+      JInvocation newColumn = JExpr._new(entry.getValue());
+      JavaBuilder enumBuilder = enumBuilders.get(propertyName);
+      if (enumBuilder != null) {
+        // Seeding the dictionary with the enum's values makes each code the ordinal of the constant.
+        column.javadoc().add("Codes are the ordinals of " + enumBuilder.getDefinedClass().name()
+            + " constants.");
+        for (Object value : enumBuilder.getSchema().getEnums()) {
+          newColumn.arg(JExpr.lit((String) value));
+        }
+      }
+      constructor.body().assign(column, JExpr.invoke("register").arg(newColumn));
+      addData.body().add(column.invoke("set").arg(row).arg(
+          batchClass.staticInvoke("get").arg(data).arg(propertyName)));
+    }
+
+    JMethod add = columns.method(JMod.PUBLIC, jCodeModel.VOID, "add");
+    add.javadoc().add("Adds a record as a new row.");
+    JVar record = add.param(definedClass, "record");
+    add.body().add(JExpr.invoke(addData).arg(record.invoke(javaBuilder.getDataGetterName())));
+
+    JMethod fromRecords = columns.method(JMod.PUBLIC | JMod.STATIC, columns, "fromRecords");
+    fromRecords.javadoc().add("Returns a batch of the records.");
+    JVar records = fromRecords.param(
+        jCodeModel.ref(Collection.class).narrow(definedClass.wildcardExtends()), "records");
+    JVar batch = fromRecords.body().decl(
+        columns, "batch", JExpr._new(columns).arg(records.invoke("size")));
+    JForEach forEach = fromRecords.body().forEach(definedClass, "record", records);
+    forEach.body().add(batch.invoke(add).arg(forEach.var()));
+    fromRecords.body()._return(batch);
+
+    JMethod fromNdjson = columns.method(JMod.PUBLIC | JMod.STATIC, columns, "fromNdjson");
+    fromNdjson.javadoc().add("Reads a batch of records from newline-delimited JSON, or from a JSON "
+        + "array, in the stream. Only the properties with columns are decoded; no records are "
+        + "created.");
+    fromNdjson._throws(IOException.class);
+    JVar in = fromNdjson.param(InputStream.class, "in");
+    AbstractJClass readerType = javaCodeGenerator.getRuntimeClass("JsonRecordReader")
+                                    .narrow(Object.class);
+    JDefinedClass readerClass = javaCodeGenerator.anonymousClass(readerType);
+    JMethod wrap = readerClass.method(JMod.PROTECTED, Object.class, "wrap");
+    wrap.annotate(Override.class);
+    wrap.body()._return(wrap.param(Object.class, "data"));
+    JBlock body = fromNdjson.body();
+    JVar reader = body.decl(readerType, "reader",
+        JExpr._new(readerClass).arg(in).arg(keys).arg(
+            javaCodeGenerator.getStringTable(javaBuilder)));
+    JVar newBatch = body.decl(columns, "batch", JExpr._new(columns).arg(JExpr.lit(1024)));
+    JTryBlock tryBlock = body._try();
+    tryBlock.body()._while(reader.invoke("hasNext")).body().add(
+        newBatch.invoke(addData).arg(reader.invoke("next")));
+    tryBlock._finally().add(reader.invoke("close"));
+    body._return(newBatch);
+  }
+
+  /**
+   * Returns the name of the column class for values of the type, or null if the type has none.
+   */
+  private String columnName(AbstractJType type) {
+    if (type.equals(jCodeModel.INT)) {
+      return "IntColumn";
+    }
+    if (type.equals(jCodeModel.LONG)) {
+      return "LongColumn";
+    }
+    if (type.equals(jCodeModel.ref(Number.class))) {
+      return "DoubleColumn";
+    }
+    if (type.equals(jCodeModel.BOOLEAN)) {
+      return "BooleanColumn";
+    }
+    if (type.equals(jCodeModel.ref(String.class))) {
+      return "StringColumn";
+    }
+    return null;
+  }
+}
@@ -2,22 +2,35 @@ package net.jimblackler.jsonschematypes.codegen;
 
 import com.helger.jcodemodel.JCodeModelException;
 import com.helger.jcodemodel.JDefinedClass;
+import java.util.function.Predicate;
 
 class JavaDefinedClassMaker {
   static JDefinedClass makeClassForSchema(String name, Client client) {
+    return makeClassForSchema(name, reserved -> false, client);
+  }
+
+  /**
+   * Makes a class, varying the name until it neither clashes with an existing class nor is
+   * reserved.
+   */
+  static JDefinedClass makeClassForSchema(
+      String name, Predicate<String> isReserved, Client client) {
     JDefinedClass _class;
     while (true) {
-      try {
-        _class = client.getClass(name);
-        break;
-      } catch (JCodeModelException e) {
-        name = varyName(name);
+      if (!isReserved.test(name)) {
+        try {
+          _class = client.getClass(name);
+          break;
+        } catch (JCodeModelException e) {
+          // Varied below.
+        }
       }
+      name = varyName(name);
     }
     return _class;
   }
 
-  private static String varyName(String name) {
+  static String varyName(String name) {
     for (int idx = 0; idx < name.length(); idx++) {
       try {
         int i = Integer.parseInt(name.substring(idx));
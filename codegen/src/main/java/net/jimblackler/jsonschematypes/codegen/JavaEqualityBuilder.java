@@ -0,0 +1,131 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JVar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.jimblackler.jsonschemafriend.Schema;
+
+/**
+ * Adds equals() and hashCode() methods to a generated class. Declared properties are compared one
+ * at a time, cheapest first, so that unequal instances are usually told apart without a deep
+ * comparison; the rest of the data is compared after. In immutable mode the hash is cached.
+ */
+class JavaEqualityBuilder {
+  private final JavaCodeGenerator javaCodeGenerator;
+  private final JavaBuilder javaBuilder;
+  private final JCodeModel jCodeModel;
+
+  JavaEqualityBuilder(JavaCodeGenerator javaCodeGenerator, JavaBuilder javaBuilder) {
+    this.javaCodeGenerator = javaCodeGenerator;
+    this.javaBuilder = javaBuilder;
+    jCodeModel = javaCodeGenerator.getJCodeModel();
+  }
+
+  void build(Map<String, Schema> properties) throws CodeGenerationException {
+    JDefinedClass definedClass = javaBuilder.getDefinedClass();
+    AbstractJClass equality = javaCodeGenerator.getRuntimeClass("JsonEquality");
+    JFieldVar data = javaBuilder.getDataField();
+
+    JMethod equals = definedClass.method(JMod.PUBLIC, jCodeModel.BOOLEAN, "equals");
+    equals.annotate(Override.class);
+    JVar other = equals.param(Object.class, "other");
+    JBlock body = equals.body();
+    body._if(JExpr._this().eq(other))._then()._return(JExpr.TRUE);
+    body._if(other.eqNull().cor(JExpr.invoke("getClass").ne(other.invoke("getClass"))))
+        ._then()
+        ._return(JExpr.FALSE);
+    JVar that = body.decl(definedClass, "that", other.castTo(definedClass));
+
+    JFieldVar hashField = null;
+    if ("immutable".equals(javaCodeGenerator.getMode())) {
+      hashField = definedClass.field(JMod.PRIVATE, jCodeModel.INT, "hash");
+      // Hashes already computed rule out most unequal instances at once.
+      body._if(JExpr._this()
+                   .ref(hashField)
+                   .ne(JExpr.lit(0))
+                   .cand(that.ref(hashField).ne(JExpr.lit(0)))
+                   .cand(JExpr._this().ref(hashField).ne(that.ref(hashField))))
+          ._then()
+          ._return(JExpr.FALSE);
+    }
+
+    if (javaBuilder.wrapsObject()) {
+      JFieldVar declared = definedClass.field(JMod.PRIVATE | JMod.STATIC | JMod.FINAL,
+          jCodeModel.ref(Set.class).narrow(String.class), "DECLARED_KEYS");
+      JInvocation asList = jCodeModel.ref(Arrays.class).staticInvoke("asList");
+      declared.init(JExpr._new(jCodeModel.ref(HashSet.class).narrowEmpty()).arg(asList));
+      for (String propertyName : cheapestFirst(properties)) {
+        asList.arg(JExpr.lit(propertyName));
+        body._if(equality.staticInvoke("equalProperty")
+                     .arg(data)
+                     .arg(that.ref(data))
+                     .arg(propertyName)
+                     .not())
+            ._then()
+            ._return(JExpr.FALSE);
+      }
+      body._return(
+          equality.staticInvoke("equalExcept").arg(data).arg(that.ref(data)).arg(declared));
+    } else {
+      body._return(equality.staticInvoke("equal").arg(data).arg(that.ref(data)));
+    }
+
+    JMethod hashCode = definedClass.method(JMod.PUBLIC, jCodeModel.INT, "hashCode");
+    hashCode.annotate(Override.class);
+    JInvocation computed = equality.staticInvoke("hash").arg(data);
+    if (hashField == null) {
+      hashCode.body()._return(computed);
+    } else {
+      hashCode.javadoc().add("The hash is computed on first use, and kept.");
+      JVar hash = hashCode.body().decl(jCodeModel.INT, "hash", JExpr._this().ref(hashField));
+      JBlock compute = hashCode.body()._if(hash.eq(JExpr.lit(0)))._then();
+      compute.assign(hash, computed);
+      // Racing threads compute the same value, so the field needs no synchronization.
+      compute.assign(JExpr._this().ref(hashField), hash);
+      hashCode.body()._return(hash);
+    }
+  }
+
+  /**
+   * Returns the property names ordered by the cost of comparing their values: booleans and numbers
+   * first, then strings and enums, then everything else.
+   */
+  private List<String> cheapestFirst(Map<String, Schema> properties)
+      throws CodeGenerationException {
+    List<List<String>> tiers = new ArrayList<>();
+    for (int tier = 0; tier != 3; tier++) {
+      tiers.add(new ArrayList<>());
+    }
+    for (Map.Entry<String, Schema> entry : properties.entrySet()) {
+      AbstractJType type = javaCodeGenerator.get(entry.getValue()).getDataType();
+      int tier;
+      if (type.isPrimitive() || type.equals(jCodeModel.ref(Number.class))) {
+        tier = 0;
+      } else if (type.equals(jCodeModel.ref(String.class))) {
+        tier = 1;
+      } else {
+        tier = 2;
+      }
+      tiers.get(tier).add(entry.getKey());
+    }
+    List<String> ordered = new ArrayList<>();
+    for (List<String> tier : tiers) {
+      ordered.addAll(tier);
+    }
+    return ordered;
+  }
+}
@@ -0,0 +1,163 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.makeClassForSchema;
+
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JLambda;
+import com.helger.jcodemodel.JLambdaParam;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JSwitch;
+import com.helger.jcodemodel.JVar;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Builds a class that maps schema URIs to the wrapper classes generated from them, so that
+ * applications can find the type for a document without reflection or classpath scanning.
+ */
+class JavaRegistryBuilder {
+  // Keeps each generated method well under the JVM's 64KB limit on method bytecode.
+  private static final int CASES_PER_METHOD = 500;
+
+  private final JCodeModel jCodeModel;
+  private final String mode;
+  private final JDefinedClass registry;
+
+  JavaRegistryBuilder(JavaCodeGenerator javaCodeGenerator, String className) {
+    jCodeModel = javaCodeGenerator.getJCodeModel();
+    mode = javaCodeGenerator.getMode();
+    registry = makeClassForSchema(className,
+        name -> javaCodeGenerator.getJPackage()._class(JMod.PUBLIC | JMod.FINAL, name));
+    registry.javadoc().add("Maps the URIs of schemas to the classes generated from them.");
+    registry.constructor(JMod.PRIVATE);
+  }
+
+  void build(Map<String, Entry> registered) {
+    List<Map.Entry<String, Entry>> entries = new ArrayList<>(registered.entrySet());
+    AbstractJClass classType = jCodeModel.ref(Class.class).narrow(jCodeModel.wildcard());
+    AbstractJClass factoryType =
+        jCodeModel.ref(Function.class).narrow(Object.class, Object.class);
+
+    Fallback returnNull = (body, uri) -> body._return(JExpr._null());
+    dispatch(entries, classType, "typeFor",
+        "Returns the class generated from the schema with the given URI, or null if there is none.",
+        (entry, data) -> jCodeModel.directClass(entry.className).dotclass(), returnNull);
+
+    dispatch(entries, factoryType, "factoryFor",
+        "Returns a function that wraps data in the class generated from the schema with the given "
+            + "URI, or null if there is none.",
+        (entry, data) -> {
+          JLambda lambda = new JLambda();
+          JLambdaParam param = lambda.addParam("data");
+          lambda.body().lambdaExpr(wrap(entry, param));
+          return lambda;
+        },
+        returnNull);
+
+    dispatch(entries, jCodeModel.ref(Object.class), "wrap",
+        "Wraps data in the class generated from the schema with the given URI.",
+        this::wrap,
+        (body, uri)
+            -> body._throw(JExpr._new(jCodeModel.ref(IllegalArgumentException.class))
+                               .arg(JExpr.lit("No type for ").plus(uri))));
+  }
+
+  private IJExpression wrap(Entry entry, IJExpression data) {
+    AbstractJType dataType;
+    if (entry.wrapsObject) {
+      dataType = JavaBuilder.objectRef(jCodeModel, mode);
+    } else if (entry.wrapsArray) {
+      dataType = JavaBuilder.arrayRef(jCodeModel, mode);
+    } else {
+      dataType = jCodeModel.ref(Object.class);
+    }
+    return JExpr._new(jCodeModel.directClass(entry.className)).arg(data.castTo(dataType));
+  }
+
+  /**
+   * Creates a public static method that switches on the URI, returning the result of the case
+   * expression. Large registries are split into several methods, selected by the hash of the URI.
+   */
+  private void dispatch(List<Map.Entry<String, Entry>> entries, AbstractJClass returnType,
+      String name, String doc, CaseExpression caseExpression, Fallback fallback) {
+    JMethod method = registry.method(JMod.PUBLIC | JMod.STATIC, returnType, name);
+    method.javadoc().add(doc);
+    JVar uri = method.param(String.class, "uri");
+    boolean takesData = "wrap".equals(name);
+    JVar data = takesData ? method.param(Object.class, "data") : null;
+
+    int chunks = (entries.size() + CASES_PER_METHOD - 1) / CASES_PER_METHOD;
+    if (chunks <= 1) {
+      addCases(method.body()._switch(uri), entries, data, caseExpression);
+      fallback.add(method.body(), uri);
+      return;
+    }
+
+    List<List<Map.Entry<String, Entry>>> buckets = new ArrayList<>();
+    for (int idx = 0; idx != chunks; idx++) {
+      buckets.add(new ArrayList<>());
+    }
+    for (Map.Entry<String, Entry> entry : entries) {
+      buckets.get(Math.floorMod(entry.getKey().hashCode(), chunks)).add(entry);
+    }
+
+    JSwitch bucketSwitch = method.body()._switch(
+        jCodeModel.ref(Math.class)
+            .staticInvoke("floorMod")
+            .arg(uri.invoke("hashCode"))
+            .arg(JExpr.lit(chunks)));
+    for (int idx = 0; idx != chunks; idx++) {
+      JMethod part = registry.method(JMod.PRIVATE | JMod.STATIC, returnType, name + idx);
+      JVar partUri = part.param(String.class, "uri");
+      JVar partData = takesData ? part.param(Object.class, "data") : null;
+      addCases(part.body()._switch(partUri), buckets.get(idx), partData, caseExpression);
+      fallback.add(part.body(), partUri);
+      bucketSwitch._case(JExpr.lit(idx))
+          .body()
+          ._return(takesData ? JExpr.invoke(part).arg(uri).arg(data) : JExpr.invoke(part).arg(uri));
+    }
+    fallback.add(method.body(), uri);
+  }
+
+  private static void addCases(JSwitch jSwitch, List<Map.Entry<String, Entry>> entries,
+      JVar data, CaseExpression caseExpression) {
+    for (Map.Entry<String, Entry> entry : entries) {
+      jSwitch._case(JExpr.lit(entry.getKey()))
+          .body()
+          ._return(caseExpression.get(entry.getValue(), data));
+    }
+  }
+
+  /**
+   * A class to register. Classes are referred to by name, so that a registry can list classes
+   * generated by other generators, such as those of other partitions of a schema set.
+   */
+  static class Entry {
+    final String className;
+    final boolean wrapsObject;
+    final boolean wrapsArray;
+
+    Entry(JavaBuilder javaBuilder) {
+      className = javaBuilder.getDefinedClass().fullName();
+      wrapsObject = javaBuilder.wrapsObject();
+      wrapsArray = javaBuilder.wrapsArray();
+    }
+  }
+
+  interface CaseExpression {
+    IJExpression get(Entry entry, IJExpression data);
+  }
+
+  interface Fallback {
+    void add(JBlock body, JVar uri);
+  }
+}
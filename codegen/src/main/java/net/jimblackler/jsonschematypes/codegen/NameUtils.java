@@ -1,6 +1,8 @@
 package net.jimblackler.jsonschematypes.codegen;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.stream.Collectors;
 import net.jimblackler.jsonschemafriend.Schema;
 
@@ -34,28 +36,53 @@ public class NameUtils {
   }
 
   static String nameForSchema(Schema schema) {
+    // The name of an items schema can depend on the name of its parent, which can in turn depend
+    // on its own parent. The chain is collected first and then named from the outermost schema
+    // down, so that deeply nested schemas need no recursion.
+    Deque<Schema> chain = new ArrayDeque<>();
+    Schema current = schema;
+    while (true) {
+      chain.push(current);
+      if (!isItemsSchema(current) || !"items".equals(baseNameForSchema(current))) {
+        break;
+      }
+      current = current.getParent();
+    }
+
+    String parentName = null;
+    String name = null;
+    while (!chain.isEmpty()) {
+      Schema link = chain.pop();
+      name = baseNameForSchema(link);
+      if (isItemsSchema(link)) {
+        if ("items".equals(name)) {
+          if (parentName.endsWith("s")) {
+            name = parentName;
+          }
+        }
+
+        if (name.endsWith("s")) {
+          name = name.substring(0, name.length() - "s".length());
+        }
+      }
+      parentName = name;
+    }
+    return name;
+  }
+
+  private static String baseNameForSchema(Schema schema) {
     String[] split = schema.getUri().toString().split("/");
     String lastPart = split[split.length - 1];
     String namePart = lastPart.split("\\.", 2)[0];
+    return makeJavaStyleIdentifier(namePart);
+  }
 
-    String name = makeJavaStyleIdentifier(namePart);
+  private static boolean isItemsSchema(Schema schema) {
     Schema parentSchema = schema.getParent();
-    if (parentSchema != null
+    return parentSchema != null
         && (parentSchema.getItems() == schema || parentSchema.getAdditionalItems() == schema
             || (parentSchema.getItemsTuple() != null
-                && parentSchema.getItemsTuple().contains(schema)))) {
-      if ("items".equals(name)) {
-        String parentName = nameForSchema(parentSchema);
-        if (parentName.endsWith("s")) {
-          name = parentName;
-        }
-      }
-
-      if (schema.getParent() != null && name.endsWith("s")) {
-        name = name.substring(0, name.length() - "s".length());
-      }
-    }
-    return name;
+                && parentSchema.getItemsTuple().contains(schema)));
   }
 
   static String makeJavaStyleIdentifier(String namePart) {
@@ -0,0 +1,18 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+/**
+ * A code generator for one partition of a schema set. A partition is a group of schema documents
+ * that is closed under {@code $ref}, so it can be generated, written out and released before the
+ * next partition is started.
+ */
+public interface PartitionGenerator extends CodeGenerator {
+  /**
+   * Called once all the schemas of the partition have been built. Implementations should write out
+   * the generated code; the generator is not used again afterwards.
+   */
+  void complete() throws CodeGenerationException;
+
+  interface Factory {
+    PartitionGenerator create() throws CodeGenerationException;
+  }
+}
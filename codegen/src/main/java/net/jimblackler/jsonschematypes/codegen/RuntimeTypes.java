@@ -0,0 +1,146 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import net.jimblackler.jsonschemafriend.Schema;
+
+/**
+ * Generates, compiles and loads classes for schemas that are only known at runtime. Each schema's
+ * classes are compiled in memory and loaded into a class loader of their own. Loaded classes are
+ * cached by a hash of the schema's location and structure, so a schema that is loaded again, or
+ * an identical one loaded from another SchemaStore, is not compiled again. When the cache is full
+ * the least recently used entry is dropped; its classes are unloaded once nothing refers to them.
+ *
+ * Schemas are compiled outside the lock of the cache, so a thread loading a cached class never
+ * waits for another schema to compile; only threads loading the same schema wait for each other.
+ *
+ * Compiling needs a JDK. The generated code is compiled against the class path of the parent
+ * class loader, where it loads from URLs, and the application class path, so in org.json mode
+ * org.json must be on one of them.
+ */
+public class RuntimeTypes {
+  private final Supplier<JavaCodeGenerator> generatorFactory;
+  private final ClassLoader parent;
+  // Entries are added before their classes are compiled, so that one compilation serves every
+  // thread that asks for the schema.
+  private final Map<String, FutureTask<Class<?>>> cache;
+
+  /**
+   * @param generatorFactory Makes a new, configured, generator for each schema compiled. It may be
+   *     called by several threads at once.
+   * @param maximumSize The most schemas to keep the classes of.
+   */
+  public RuntimeTypes(Supplier<JavaCodeGenerator> generatorFactory, int maximumSize) {
+    this(generatorFactory, maximumSize, RuntimeTypes.class.getClassLoader());
+  }
+
+  /**
+   * @param generatorFactory Makes a new, configured, generator for each schema compiled. It may be
+   *     called by several threads at once.
+   * @param maximumSize The most schemas to keep the classes of.
+   * @param parent The parent of the class loaders of generated classes.
+   */
+  public RuntimeTypes(
+      Supplier<JavaCodeGenerator> generatorFactory, int maximumSize, ClassLoader parent) {
+    this.generatorFactory = generatorFactory;
+    this.parent = parent;
+    cache = new LinkedHashMap<String, FutureTask<Class<?>>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, FutureTask<Class<?>>> eldest) {
+        return size() > maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the class generated from the schema, compiling it if it is not cached. Classes for the
+   * schemas it refers to are loaded with it, and are reached through its accessors.
+   *
+   * @param schema The schema of an object or array.
+   * @return The class.
+   * @throws CodeGenerationException If the schema has no class, or the code fails to compile.
+   */
+  public Class<?> load(Schema schema) throws CodeGenerationException {
+    String hash = hash(schema);
+    FutureTask<Class<?>> task;
+    boolean compiling = false;
+    synchronized (this) {
+      task = cache.get(hash);
+      if (task == null) {
+        task = new FutureTask<>(() -> compile(schema));
+        cache.put(hash, task);
+        compiling = true;
+      }
+    }
+    if (compiling) {
+      task.run();
+    }
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CodeGenerationException(e);
+    } catch (ExecutionException e) {
+      // Failures are not cached, so the schema is compiled again by the next load.
+      synchronized (this) {
+        cache.remove(hash, task);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof CodeGenerationException) {
+        throw (CodeGenerationException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new CodeGenerationException(cause);
+    }
+  }
+
+  /**
+   * Returns the number of schemas whose classes are cached, or being compiled.
+   */
+  public synchronized int size() {
+    return cache.size();
+  }
+
+  private Class<?> compile(Schema schema) throws CodeGenerationException {
+    JavaCodeGenerator javaCodeGenerator = generatorFactory.get();
+    javaCodeGenerator.build(schema);
+    JavaBuilder javaBuilder = javaCodeGenerator.get(schema);
+    if (!javaBuilder.isClass()) {
+      throw new CodeGenerationException("No class is generated for " + schema.getUri());
+    }
+    ClassLoader classLoader = InMemoryCompiler.compile(javaCodeGenerator, parent);
+    try {
+      return classLoader.loadClass(javaBuilder.getDefinedClass().binaryName());
+    } catch (ClassNotFoundException e) {
+      throw new CodeGenerationException(e);
+    }
+  }
+
+  private static String hash(Schema schema) {
+    // Class names are derived from schema URIs, so the location is part of the key.
+    String key = schema.getUri() + "\n" + new SchemaShapes().fullKeyFor(schema);
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256.
+      throw new IllegalStateException(e);
+    }
+    StringBuilder hash = new StringBuilder();
+    for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.toString();
+  }
+}
@@ -0,0 +1,103 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds schema files by walking a directory tree. Files are selected with glob patterns (as
+ * understood by {@link FileSystem#getPathMatcher}), matched against each path relative to the
+ * root. A file is selected if it matches any include pattern and no exclude pattern. Directories
+ * that match an exclude pattern are not entered.
+ */
+public class SchemaDiscovery {
+  private final Collection<String> includes;
+  private final Collection<String> excludes;
+
+  /**
+   * Creates a discovery that selects all .json files at any depth.
+   */
+  public SchemaDiscovery() {
+    this(Collections.singleton("**.json"), Collections.emptySet());
+  }
+
+  public SchemaDiscovery(Collection<String> includes, Collection<String> excludes) {
+    this.includes = new ArrayList<>(includes);
+    this.excludes = new ArrayList<>(excludes);
+  }
+
+  /**
+   * Finds the schema files under a directory.
+   *
+   * @param root The directory to search. It may be the root of a jar or zip file system.
+   * @return The selected files, ordered by their path relative to the root so that generation
+   *     does not depend on the order the file system lists directories in.
+   */
+  public List<Path> find(Path root) throws IOException {
+    FileSystem fileSystem = root.getFileSystem();
+    List<PathMatcher> includeMatchers = matchers(fileSystem, includes);
+    List<PathMatcher> excludeMatchers = matchers(fileSystem, excludes);
+    List<Path> found = new ArrayList<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        Path relative = root.relativize(dir);
+        if (relative.toString().isEmpty() || !matchesAny(excludeMatchers, relative)) {
+          return FileVisitResult.CONTINUE;
+        }
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        Path relative = root.relativize(file);
+        if (attrs.isRegularFile() && matchesAny(includeMatchers, relative)
+            && !matchesAny(excludeMatchers, relative)) {
+          found.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    found.sort(Comparator.comparing(path -> root.relativize(path).toString()));
+    return found;
+  }
+
+  /**
+   * Returns true if the file is a jar or zip archive, to be opened as a file system and searched
+   * from its root.
+   */
+  static boolean isArchive(Path path) {
+    if (!Files.isRegularFile(path)) {
+      return false;
+    }
+    String name = path.getFileName().toString().toLowerCase();
+    return name.endsWith(".jar") || name.endsWith(".zip");
+  }
+
+  private static List<PathMatcher> matchers(FileSystem fileSystem, Collection<String> globs) {
+    List<PathMatcher> matchers = new ArrayList<>();
+    for (String glob : globs) {
+      matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+    }
+    return matchers;
+  }
+
+  private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+    for (PathMatcher matcher : matchers) {
+      if (matcher.matches(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
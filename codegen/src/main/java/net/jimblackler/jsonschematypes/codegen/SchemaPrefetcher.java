@@ -0,0 +1,160 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import net.jimblackler.jsonschemafriend.SchemaStore;
+
+/**
+ * Fetches schema documents, and the documents they refer to with {@code $ref}, concurrently. The
+ * documents are placed in a SchemaStore so that loading schemas from it needs no further I/O.
+ *
+ * Fetching is best-effort: documents that cannot be fetched or parsed are skipped, and the error is
+ * reported as usual when the SchemaStore comes to load them.
+ */
+public class SchemaPrefetcher {
+  private final int parallelism;
+
+  /**
+   * @param parallelism The maximum number of documents fetched at once.
+   */
+  public SchemaPrefetcher(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Fetches the documents and everything they refer to, directly or indirectly, and stores them in
+   * the SchemaStore.
+   *
+   * @param schemaStore The store to add the documents to.
+   * @param uris The URIs of the documents.
+   */
+  public void prefetch(SchemaStore schemaStore, Collection<URI> uris)
+      throws CodeGenerationException {
+    Set<URI> seen = new HashSet<>();
+    Collection<URI> toFetch = new ArrayList<>();
+    for (URI uri : uris) {
+      URI documentUri = DocumentUtils.withoutFragment(uri);
+      if (seen.add(documentUri)) {
+        toFetch.add(documentUri);
+      }
+    }
+    fetchAll(schemaStore, seen, toFetch);
+  }
+
+  /**
+   * Fetches everything referred to, directly or indirectly, by documents that are already loaded,
+   * and stores it in the SchemaStore. The loaded documents themselves are not stored.
+   *
+   * @param schemaStore The store to add the documents to.
+   * @param documents The loaded documents, by the URIs they were loaded from.
+   */
+  public void prefetchReferenced(SchemaStore schemaStore, Map<URI, Object> documents)
+      throws CodeGenerationException {
+    Set<URI> seen = new HashSet<>(documents.keySet());
+    Collection<URI> toFetch = new ArrayList<>();
+    for (Map.Entry<URI, Object> entry : documents.entrySet()) {
+      for (URI referenced :
+          DocumentUtils.findReferencedDocuments(entry.getValue(), entry.getKey())) {
+        if (seen.add(referenced)) {
+          toFetch.add(referenced);
+        }
+      }
+    }
+    fetchAll(schemaStore, seen, toFetch);
+  }
+
+  private void fetchAll(SchemaStore schemaStore, Set<URI> seen, Collection<URI> toFetch)
+      throws CodeGenerationException {
+    if (toFetch.isEmpty()) {
+      return;
+    }
+    ExecutorService executor = newExecutor();
+    // Virtual thread executors are unbounded, so concurrency is limited here in all cases.
+    Semaphore permits = new Semaphore(parallelism);
+    CompletionService<Fetched> completionService = new ExecutorCompletionService<>(executor);
+    int outstanding = 0;
+    try {
+      for (URI uri : toFetch) {
+        completionService.submit(() -> fetch(uri, permits));
+        outstanding++;
+      }
+
+      while (outstanding > 0) {
+        Future<Fetched> future = completionService.take();
+        outstanding--;
+        Fetched fetched = future.get();
+        if (fetched.document == null) {
+          continue;
+        }
+        // Documents are stored from this thread only, as SchemaStore is not thread-safe.
+        schemaStore.store(fetched.uri, fetched.document);
+        for (URI referenced :
+            DocumentUtils.findReferencedDocuments(fetched.document, fetched.uri)) {
+          if (seen.add(referenced)) {
+            completionService.submit(() -> fetch(referenced, permits));
+            outstanding++;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CodeGenerationException(e);
+    } catch (ExecutionException e) {
+      throw new CodeGenerationException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Fetched fetch(URI uri, Semaphore permits) throws InterruptedException {
+    permits.acquire();
+    try {
+      return new Fetched(uri, DocumentUtils.readDocument(uri));
+    } catch (IOException | IllegalArgumentException e) {
+      // Left for the SchemaStore to report when the schema is loaded.
+      return new Fetched(uri, null);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private ExecutorService newExecutor() {
+    // Virtual threads suit blocking I/O, but are only available from Java 21.
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(parallelism, runnable -> {
+        Thread thread = new Thread(runnable, "schema-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  private static class Fetched {
+    final URI uri;
+    final Object document;
+
+    Fetched(URI uri, Object document) {
+      this.uri = uri;
+      this.document = document;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import net.jimblackler.jsonschemafriend.CombinedSchema;
+import net.jimblackler.jsonschemafriend.Schema;
+import org.json.JSONArray;
+
+/**
+ * Computes canonical keys that describe the structure of schemas, as far as it affects the
+ * generated code. Schemas with equal keys can share a single generated type.
+ *
+ * Keys are hash-consed: sub-schemas are referred to by a small integer that identifies their own
+ * key, so the key of a schema does not grow with the size of its sub-tree.
+ */
+class SchemaShapes {
+  private final Map<Schema, String> keys = new HashMap<>();
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final Set<Schema> inProgress = new HashSet<>();
+
+  String keyFor(Schema schema) {
+    String key = keys.get(schema);
+    if (key != null) {
+      return key;
+    }
+    if (inProgress.contains(schema)) {
+      // A schema that (indirectly) contains itself can only be matched by location.
+      return "cycle:" + schema.getUri();
+    }
+
+    // Keys are computed children first, from an explicit stack so that very deep schemas cannot
+    // overflow the call stack.
+    Deque<Frame> stack = new ArrayDeque<>();
+    stack.push(new Frame(schema));
+    inProgress.add(schema);
+    while (!stack.isEmpty()) {
+      Frame frame = stack.peek();
+      if (frame.children.hasNext()) {
+        Schema child = frame.children.next();
+        if (!keys.containsKey(child) && inProgress.add(child)) {
+          stack.push(new Frame(child));
+        }
+        continue;
+      }
+      stack.pop();
+      keys.put(frame.schema, computeKey(frame.schema, frame.combinedSchema));
+      inProgress.remove(frame.schema);
+    }
+    return keys.get(schema);
+  }
+
+  /**
+   * Returns a key that describes the whole structure of the schema, sub-schemas included. The key
+   * of {@link #keyFor} refers to sub-schemas by ids that are only meaningful within this instance;
+   * this key adds the table of those ids, so it can be compared with keys from other instances.
+   * It is only deterministic when called on a new instance.
+   */
+  String fullKeyFor(Schema schema) {
+    String key = keyFor(schema);
+    String[] table = new String[ids.size()];
+    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+      table[entry.getValue()] = entry.getKey();
+    }
+    return new JSONArray().put(key).put(new JSONArray(table)).toString();
+  }
+
+  private String computeKey(Schema schema, CombinedSchema combinedSchema) {
+    List<Object> parts = new ArrayList<>();
+    parts.add(new TreeSet<>(combinedSchema.getInferredTypes()));
+    // The description is part of the documentation of the shared type, so it must apply to all.
+    parts.add(schema.getDescription());
+    parts.add(schema.getProperties().isEmpty());
+
+    List<Object> properties = new ArrayList<>();
+    for (Map.Entry<String, Schema> entry :
+        new TreeMap<>(combinedSchema.getProperties()).entrySet()) {
+      properties.add(entry.getKey());
+      properties.add(idFor(entry.getValue()));
+    }
+    parts.add(properties);
+
+    Collection<String> required = schema.getRequiredProperties();
+    parts.add(required == null ? null : new TreeSet<>(required));
+    parts.add(schema.getEnums());
+    parts.add(describe(schema.getMinimum()));
+    parts.add(describe(schema.getMaximum()));
+    parts.add(describe(schema.getDefault()));
+    parts.add(idFor(schema.getItems()));
+    List<Schema> itemsTuple = schema.getItemsTuple();
+    if (itemsTuple == null) {
+      parts.add(null);
+    } else {
+      List<String> tupleIds = new ArrayList<>();
+      for (Schema itemsSchema : itemsTuple) {
+        tupleIds.add(idFor(itemsSchema));
+      }
+      parts.add(tupleIds);
+    }
+    parts.add(idFor(schema.getAdditionalItems()));
+    return new JSONArray(parts).toString();
+  }
+
+  private String idFor(Schema schema) {
+    if (schema == null) {
+      return null;
+    }
+    String key = keyFor(schema);
+    Integer id = ids.get(key);
+    if (id == null) {
+      id = ids.size();
+      ids.put(key, id);
+    }
+    return "#" + id;
+  }
+
+  private static String describe(Object object) {
+    // The type is included because it affects the generated literals (e.g. 1 versus 1L).
+    return object == null ? null : object.getClass().getSimpleName() + ":" + object;
+  }
+
+  private static class Frame {
+    final Schema schema;
+    final CombinedSchema combinedSchema;
+    final Iterator<Schema> children;
+
+    Frame(Schema schema) {
+      this.schema = schema;
+      combinedSchema = new CombinedSchema(schema);
+      Collection<Schema> children = new ArrayList<>(combinedSchema.getProperties().values());
+      if (schema.getItems() != null) {
+        children.add(schema.getItems());
+      }
+      if (schema.getItemsTuple() != null) {
+        children.addAll(schema.getItemsTuple());
+      }
+      if (schema.getAdditionalItems() != null) {
+        children.add(schema.getAdditionalItems());
+      }
+      this.children = children.iterator();
+    }
+  }
+}
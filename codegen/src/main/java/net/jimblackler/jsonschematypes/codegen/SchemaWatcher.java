@@ -0,0 +1,362 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.helger.jcodemodel.writer.FileCodeWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import net.jimblackler.jsonschemafriend.Schema;
+import net.jimblackler.jsonschemafriend.SchemaException;
+import net.jimblackler.jsonschemafriend.SchemaStore;
+
+/**
+ * Keeps generated code up to date with a directory of schemas as the schemas are edited. The
+ * schemas are split into partitions, the connected components of the graph of {@code $ref}s
+ * between their documents, as {@link CodeGeneration#buildPartitioned}. When files change only the
+ * partitions that contain them are loaded and generated again; the output of the others is kept,
+ * and the references found in unchanged documents are remembered, so they are not read again.
+ *
+ * Java files are written to a directory, and are deleted when the partition that wrote them no
+ * longer generates them. If the Java generators have a registry class name, one registry of the
+ * classes of every partition is written. TypeScript from every partition is written to a single
+ * types.ts file, and decoders, if the TypeScript generators make them, to decoders.js and
+ * decoders.d.ts.
+ */
+public class SchemaWatcher implements Closeable {
+  // Editors often save a file in several steps. Changes that arrive within this time of each other
+  // are handled together.
+  private static final long SETTLE_MILLISECONDS = 20;
+  private final Path root;
+  private final SchemaDiscovery discovery;
+  private final Supplier<JavaCodeGenerator> javaGenerators;
+  private final Supplier<TypeScriptCodeGenerator> typeScriptGenerators;
+  private final Path javaOut;
+  private final Path typeScriptOut;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final Map<URI, Collection<URI>> references = new HashMap<>();
+  // Documents that changed since their partition was last generated successfully.
+  private final Set<URI> pending = new HashSet<>();
+  private final Map<Path, Integer> javaFileOwners = new HashMap<>();
+  private Map<List<URI>, Partition> partitions = new LinkedHashMap<>();
+  // The files of the registry, which is written once for all partitions.
+  private Partition registry = new Partition();
+
+  /**
+   * @param root The directory of schemas.
+   * @param discovery Selects the schema files.
+   * @param javaGenerators Makes a new, configured, Java generator for each partition generated,
+   *     and for each registry.
+   * @param typeScriptGenerators Makes a new TypeScript generator for each partition generated.
+   * @param javaOut The directory to write Java files to.
+   * @param typeScriptOut The directory to write types.ts, and any decoders, to.
+   */
+  public SchemaWatcher(Path root, SchemaDiscovery discovery,
+      Supplier<JavaCodeGenerator> javaGenerators,
+      Supplier<TypeScriptCodeGenerator> typeScriptGenerators, Path javaOut, Path typeScriptOut)
+      throws IOException {
+    this.root = root;
+    this.discovery = discovery;
+    this.javaGenerators = javaGenerators;
+    this.typeScriptGenerators = typeScriptGenerators;
+    this.javaOut = javaOut;
+    this.typeScriptOut = typeScriptOut;
+    watchService = root.getFileSystem().newWatchService();
+    registerTree(root);
+  }
+
+  /**
+   * Generates the code of every partition that is not up to date, which on first use is all of
+   * them.
+   *
+   * @return The schema documents that were generated.
+   */
+  public Collection<URI> generate() throws CodeGenerationException {
+    return update(Collections.emptySet());
+  }
+
+  /**
+   * Generates the code of the partitions affected by changes to files. Files that were added or
+   * removed are found by searching the directory again. If generation fails, the previous output is
+   * left in place, and the partitions are generated again by the next update.
+   *
+   * @param changed The files that changed.
+   * @return The schema documents that were generated.
+   */
+  public synchronized Collection<URI> update(Collection<Path> changed)
+      throws CodeGenerationException {
+    List<URI> uris = new ArrayList<>();
+    try {
+      for (Path path : discovery.find(root)) {
+        uris.add(path.toUri());
+      }
+      for (Path path : changed) {
+        pending.add(path.toUri());
+      }
+      references.keySet().retainAll(uris);
+      for (URI uri : uris) {
+        if (pending.contains(uri) || !references.containsKey(uri)) {
+          pending.add(uri);
+          Object document = DocumentUtils.readDocument(uri);
+          references.put(uri, DocumentUtils.findReferencedDocuments(document, uri));
+        }
+      }
+    } catch (IOException e) {
+      throw new CodeGenerationException(e);
+    }
+
+    // Partitions that have the same documents as before, none of them changed, are kept.
+    Map<List<URI>, Partition> next = new LinkedHashMap<>();
+    List<List<URI>> stale = new ArrayList<>();
+    for (List<URI> partition : CodeGeneration.partition(uris, references)) {
+      Partition existing = partitions.get(partition);
+      if (existing != null && Collections.disjoint(partition, pending)) {
+        next.put(partition, existing);
+      } else {
+        next.put(partition, null);
+        stale.add(partition);
+      }
+    }
+
+    // Everything is built before anything is written, so that a failure leaves the old output.
+    // A registry would be overwritten by each partition, so it is built once, by a generator of its
+    // own, from the classes of every partition.
+    JavaCodeGenerator registryGenerator = javaGenerators.get();
+    String registryClassName = registryGenerator.getRegistryClassName();
+    Collection<String> classNames = new HashSet<>();
+    if (registryClassName != null) {
+      classNames.add(registryClassName);
+    }
+    Collection<String> typeScriptClassNames = new HashSet<>();
+    for (Partition partition : next.values()) {
+      if (partition != null) {
+        classNames.addAll(partition.classNames);
+        typeScriptClassNames.addAll(partition.typeScriptClassNames);
+      }
+    }
+    Map<List<URI>, JavaCodeGenerator> built = new LinkedHashMap<>();
+    Collection<URI> generated = new ArrayList<>();
+    for (List<URI> uriList : stale) {
+      SchemaStore schemaStore = new SchemaStore();
+      JavaCodeGenerator javaCodeGenerator = javaGenerators.get();
+      TypeScriptCodeGenerator typeScriptCodeGenerator = typeScriptGenerators.get();
+      javaCodeGenerator.setRegistryClassName(null);
+      javaCodeGenerator.reserveClassNames(classNames);
+      typeScriptCodeGenerator.reserveClassNames(typeScriptClassNames);
+      try {
+        for (URI uri : uriList) {
+          Schema schema = schemaStore.loadSchema(uri);
+          javaCodeGenerator.build(schema);
+          typeScriptCodeGenerator.build(schema);
+        }
+      } catch (SchemaException e) {
+        throw new CodeGenerationException(e);
+      }
+      StringWriter typeScript = new StringWriter();
+      typeScriptCodeGenerator.output(typeScript);
+      Partition partition = new Partition();
+      partition.typeScript = typeScript.toString();
+      if (typeScriptCodeGenerator.getDecoders()) {
+        partition.decoders = new TypeScriptDecoders();
+        partition.decoders.add(typeScriptCodeGenerator);
+      }
+      partition.classNames = javaCodeGenerator.getTopLevelClassNames();
+      partition.registryEntries = javaCodeGenerator.getRegistryEntries();
+      partition.typeScriptClassNames = typeScriptCodeGenerator.getTopLevelClassNames();
+      classNames.addAll(partition.classNames);
+      typeScriptClassNames.addAll(partition.typeScriptClassNames);
+      next.put(uriList, partition);
+      built.put(uriList, javaCodeGenerator);
+      generated.addAll(uriList);
+    }
+
+    // Owner counts are changed on a copy, and only kept once everything is written, so that a
+    // failed write leaves them matching the files of the previous output.
+    Map<Path, Integer> owners = new HashMap<>(javaFileOwners);
+    Partition nextRegistry = new Partition();
+    try {
+      Files.createDirectories(javaOut);
+      for (Map.Entry<List<URI>, JavaCodeGenerator> entry : built.entrySet()) {
+        writeJavaFiles(next.get(entry.getKey()), entry.getValue(), owners);
+      }
+      if (registryClassName != null) {
+        for (Partition partition : next.values()) {
+          registryGenerator.addToRegistry(partition.registryEntries);
+        }
+        writeJavaFiles(nextRegistry, registryGenerator, owners);
+      }
+      Files.createDirectories(typeScriptOut);
+      try (PrintWriter writer = new PrintWriter(typeScriptOut.resolve("types.ts").toFile(),
+               StandardCharsets.UTF_8.name())) {
+        for (Partition partition : next.values()) {
+          writer.print(partition.typeScript);
+        }
+      }
+      if (next.values().stream().anyMatch(partition -> partition.decoders != null)) {
+        TypeScriptDecoders decoders = new TypeScriptDecoders();
+        for (Partition partition : next.values()) {
+          if (partition.decoders != null) {
+            decoders.add(partition.decoders);
+          }
+        }
+        try (PrintWriter javaScript = new PrintWriter(typeScriptOut.resolve("decoders.js").toFile(),
+                 StandardCharsets.UTF_8.name());
+             PrintWriter declarations = new PrintWriter(
+                 typeScriptOut.resolve("decoders.d.ts").toFile(), StandardCharsets.UTF_8.name())) {
+          decoders.write(javaScript, declarations);
+        }
+      }
+
+      // The files of replaced output are released last, so that a file written again keeps its
+      // owner and is not deleted.
+      for (Map.Entry<List<URI>, Partition> entry : partitions.entrySet()) {
+        if (next.get(entry.getKey()) != entry.getValue()) {
+          deleteJavaFiles(entry.getValue(), owners);
+        }
+      }
+      deleteJavaFiles(registry, owners);
+    } catch (IOException e) {
+      throw new CodeGenerationException(e);
+    }
+    javaFileOwners.clear();
+    javaFileOwners.putAll(owners);
+    registry = nextRegistry;
+    partitions = next;
+    pending.clear();
+    return generated;
+  }
+
+  /**
+   * Watches the directory, and updates the generated code whenever files change. Returns when the
+   * watcher is closed.
+   *
+   * @param errors Receives the errors of failed updates. Watching continues after an error.
+   */
+  public void watch(Consumer<CodeGenerationException> errors) throws InterruptedException {
+    try {
+      while (true) {
+        Set<Path> changed = new HashSet<>();
+        WatchKey key = watchService.take();
+        while (key != null) {
+          collectChanges(key, changed);
+          key = watchService.poll(SETTLE_MILLISECONDS, TimeUnit.MILLISECONDS);
+        }
+        try {
+          update(changed);
+        } catch (CodeGenerationException e) {
+          errors.accept(e);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // Closed by another thread; watching is over.
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  private void collectChanges(WatchKey key, Collection<Path> changed) {
+    Path directory = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        // Events were lost, so every document is read again.
+        synchronized (this) {
+          pending.addAll(references.keySet());
+        }
+        continue;
+      }
+      Path path = directory.resolve((Path) event.context());
+      changed.add(path);
+      if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+        try {
+          registerTree(path);
+        } catch (IOException e) {
+          // The directory was removed again before it could be watched.
+        }
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  /**
+   * Watches a directory and every directory under it, as a WatchService only reports changes to
+   * the direct children of a directory.
+   */
+  private void registerTree(Path start) throws IOException {
+    try (Stream<Path> paths = Files.walk(start)) {
+      for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+        directories.put(
+            path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), path);
+      }
+    }
+  }
+
+  private void writeJavaFiles(Partition partition, JavaCodeGenerator javaCodeGenerator,
+      Map<Path, Integer> owners) throws IOException {
+    Collection<Path> written = new ArrayList<>();
+    javaCodeGenerator.output(new FileCodeWriter(
+        javaOut.toFile(), StandardCharsets.UTF_8, System.getProperty("line.separator")) {
+      @Override
+      public OutputStream openBinary(String dirName, String fileName) throws IOException {
+        written.add(javaOut.resolve(dirName).resolve(fileName));
+        return super.openBinary(dirName, fileName);
+      }
+    });
+    // Support classes are written by every partition that uses them, so a file is only deleted
+    // when no partition has written it.
+    for (Path path : written) {
+      owners.merge(path, 1, Integer::sum);
+    }
+    partition.javaFiles = written;
+  }
+
+  private static void deleteJavaFiles(Partition partition, Map<Path, Integer> owners)
+      throws IOException {
+    for (Path path : partition.javaFiles) {
+      if (owners.merge(path, -1, Integer::sum) == 0) {
+        owners.remove(path);
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private static class Partition {
+    Collection<String> classNames;
+    Collection<String> typeScriptClassNames;
+    Map<String, JavaRegistryBuilder.Entry> registryEntries;
+    String typeScript;
+    TypeScriptDecoders decoders;
+    Collection<Path> javaFiles = Collections.emptyList();
+  }
+}
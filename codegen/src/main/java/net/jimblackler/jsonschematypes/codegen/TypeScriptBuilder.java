@@ -1,29 +1,60 @@
 package net.jimblackler.jsonschematypes.codegen;
 
+import static net.jimblackler.jsonschematypes.codegen.JavaDefinedClassMaker.varyName;
 import static net.jimblackler.jsonschematypes.codegen.NameUtils.nameForSchema;
 
 import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import net.jimblackler.jsonschemafriend.CombinedSchema;
 import net.jimblackler.jsonschemafriend.Schema;
+import org.json.JSONObject;
 
 public class TypeScriptBuilder {
-  private final String baseClassName;
-  private final String fullClassName;
+  private String baseClassName;
+  private String fullClassName;
   private final Schema schema;
-  private final TypeScriptBuilder parent;
+  private TypeScriptBuilder parent;
+  private boolean linked;
   private final Collection<TypeScriptBuilder> children = new ArrayList<>();
-  private final String typeName;
+  // The other schemas that share the type, as they have the same structure.
+  private final List<URI> sharedUris = new ArrayList<>();
+  private String typeName;
   private final TypeScriptCodeGenerator typeScriptCodeGenerator;
 
+  /**
+   * Creates the builder without creating or consulting any other builder. Names are assigned in
+   * {@link #link()} and types in {@link #resolveTypeName()}, driven by
+   * {@link TypeScriptCodeGenerator} from a work queue so that deep schemas need no recursion.
+   */
   public TypeScriptBuilder(TypeScriptCodeGenerator typeScriptCodeGenerator, Schema schema) {
     typeScriptCodeGenerator.register(schema.getUri(), this);
 
     this.schema = schema;
     this.typeScriptCodeGenerator = typeScriptCodeGenerator;
+  }
+
+  /**
+   * Records that a schema of the same structure at another location shares the type.
+   */
+  void addSharedUri(URI uri) {
+    sharedUris.add(uri);
+  }
+
+  /**
+   * Attaches the builder to the builder of its parent schema and names it. The parent builder must
+   * already be linked.
+   */
+  void link() {
+    linked = true;
     Schema parent = schema.getParent();
     if (parent == null) {
       this.parent = null;
@@ -32,57 +63,81 @@ public class TypeScriptBuilder {
       this.parent.addChild(this);
     }
 
-    CombinedSchema combinedSchema = new CombinedSchema(schema);
-    Collection<String> types = combinedSchema.getInferredTypes();
     baseClassName = nameForSchema(schema);
     if (this.parent == null) {
+      // Top-level names may be reserved by other partitions written to the same file.
+      while (typeScriptCodeGenerator.isReservedClassName(baseClassName)) {
+        baseClassName = varyName(baseClassName);
+      }
       fullClassName = baseClassName;
     } else {
       fullClassName = this.parent.getFullClassName() + "." + baseClassName;
     }
+  }
 
+  /**
+   * Returns the schemas whose builders are needed to write this one.
+   */
+  Collection<Schema> getReferencedSchemas() {
+    Collection<Schema> referenced = new ArrayList<>();
     Schema items = schema.getItems();
     if (items != null) {
-      typeScriptCodeGenerator.build(items);
+      referenced.add(items);
     }
+    referenced.addAll(new CombinedSchema(schema).getProperties().values());
+    return referenced;
+  }
 
-    {
-      StringBuilder sb = new StringBuilder();
-      Collection<String> types0 = new HashSet<>(types);
-      if (types0.contains("integer")) {
-        types0.remove("integer");
-        types0.add("number");
-      }
-      for (String type : types0) {
-        if (isClass()) {
-          if (sb.length() > 0) {
-            sb.append(" | ");
-          }
-          sb.append(fullClassName);
-        } else if ("array".equals(type)) {
-          if (sb.length() > 0) {
-            sb.append(" | ");
-          }
-          if (items == null) {
-            sb.append("Object");
-          } else {
-            TypeScriptBuilder typeScriptBuilder = typeScriptCodeGenerator.get(items);
-            sb.append(typeScriptBuilder.getTypeName());
-          }
-          sb.append("[]");
-        } else {
-          if (sb.length() > 0) {
-            sb.append(" | ");
-          }
-          sb.append(type);
+  /**
+   * Returns the builder whose type name is needed for the type name of this one, if any.
+   */
+  TypeScriptBuilder getItemsBuilder() {
+    Schema items = schema.getItems();
+    return items == null ? null : typeScriptCodeGenerator.get(items);
+  }
+
+  /**
+   * Works out the type name. The type name of the items builder should already be resolved where
+   * possible; if it is not (because the items refer back to this schema) a generic array is used.
+   */
+  void resolveTypeName() {
+    Collection<String> types = new CombinedSchema(schema).getInferredTypes();
+    Schema items = schema.getItems();
+    StringBuilder sb = new StringBuilder();
+    Collection<String> types0 = new HashSet<>(types);
+    if (types0.contains("integer")) {
+      types0.remove("integer");
+      types0.add("number");
+    }
+    for (String type : types0) {
+      if (isClass()) {
+        if (sb.length() > 0) {
+          sb.append(" | ");
         }
+        sb.append(fullClassName);
+      } else if ("array".equals(type)) {
+        if (sb.length() > 0) {
+          sb.append(" | ");
+        }
+        String itemsTypeName = items == null ? null : getItemsBuilder().getTypeName();
+        sb.append(itemsTypeName == null ? "Object" : itemsTypeName);
+        sb.append("[]");
+      } else {
+        if (sb.length() > 0) {
+          sb.append(" | ");
+        }
+        sb.append(type);
       }
-      typeName = sb.toString();
     }
+    typeName = sb.toString();
+  }
 
-    for (Map.Entry<String, Schema> entry : combinedSchema.getProperties().entrySet()) {
-      typeScriptCodeGenerator.build(entry.getValue());
-    }
+  boolean isLinked() {
+    return linked;
+  }
+
+  Schema getSchema() {
+    return schema;
   }
 
   static void writeLine(PrintWriter printWriter, int indentationLevel, String line) {
@@ -96,7 +151,7 @@ public class TypeScriptBuilder {
     return fullClassName;
   }
 
-  private String getTypeName() {
+  String getTypeName() {
     return typeName;
   }
 
@@ -104,13 +159,26 @@ public class TypeScriptBuilder {
     children.add(child);
   }
 
-  private boolean isClass() {
+  boolean isClass() {
     return !schema.getProperties().isEmpty();
   }
 
   void write(PrintWriter printWriter, int indentationLevel) {
+    // Nested namespaces are written from an explicit stack of steps, so that deeply nested schemas
+    // cannot overflow the call stack.
+    Deque<Runnable> steps = new ArrayDeque<>();
+    steps.push(() -> writeNode(printWriter, indentationLevel, steps));
+    while (!steps.isEmpty()) {
+      steps.pop().run();
+    }
+  }
+
+  private void writeNode(PrintWriter printWriter, int indentationLevel, Deque<Runnable> steps) {
     if (isClass()) {
       writeLine(printWriter, indentationLevel, "// Generated from " + schema.getUri());
+      for (URI sharedUri : sharedUris) {
+        writeLine(printWriter, indentationLevel, "// Also used for " + sharedUri);
+      }
       writeLine(printWriter, indentationLevel, "export class " + baseClassName + " {");
 
       for (Map.Entry<String, Schema> entry : schema.getProperties().entrySet()) {
@@ -134,13 +202,200 @@ public class TypeScriptBuilder {
 
     if (childClasses) {
       writeLine(printWriter, indentationLevel, "export namespace " + baseClassName + " {");
-      for (TypeScriptBuilder child : children) {
-        child.write(printWriter, indentationLevel + 1);
+      steps.push(() -> writeLine(printWriter, indentationLevel, "}"));
+      List<TypeScriptBuilder> reversed = new ArrayList<>(children);
+      Collections.reverse(reversed);
+      for (TypeScriptBuilder child : reversed) {
+        steps.push(() -> child.writeNode(printWriter, indentationLevel + 1, steps));
       }
-      writeLine(printWriter, indentationLevel, "}");
     }
   }
 
+  /**
+   * Writes the decoders of the class: a guard, isX(value), which checks a parsed value against the
+   * schema, and decodeX(json), which parses JSON and checks it. Checks are written out as
+   * straight-line typeof tests, and enums are looked up in Set constants, so no schema is
+   * interpreted at run time. Properties of class type are checked by calling the guard of that
+   * class.
+   */
+  void writeDecoders(PrintWriter javaScript, PrintWriter declarations) {
+    String decoderName = getDecoderName();
+    List<String> enumSets = new ArrayList<>();
+    List<String> checks = new ArrayList<>();
+    Collection<String> required = schema.getRequiredProperties();
+    for (Map.Entry<String, Schema> entry : schema.getProperties().entrySet()) {
+      String check = checkFor(entry.getValue(), "property", enumSets, new HashSet<>());
+      boolean isRequired = required != null && required.contains(entry.getKey());
+      if (isRequired) {
+        checks.add("property = value[" + JSONObject.quote(entry.getKey()) + "];");
+        checks.add("true".equals(check) ? "if (property === undefined) {"
+                                        : "if (property === undefined || !(" + check + ")) {");
+      } else if (!"true".equals(check)) {
+        checks.add("property = value[" + JSONObject.quote(entry.getKey()) + "];");
+        checks.add("if (property !== undefined && !(" + check + ")) {");
+      }
+    }
+
+    writeLine(javaScript, 0, "// Generated from " + schema.getUri());
+    for (int idx = 0; idx != enumSets.size(); idx++) {
+      writeLine(javaScript, 0,
+          "const " + getEnumSetName(idx) + " = new Set([" + enumSets.get(idx) + "]);");
+    }
+    writeLine(javaScript, 0, "export function is" + decoderName + "(value) {");
+    writeLine(javaScript, 1,
+        "if (typeof value !== \"object\" || value === null || Array.isArray(value)) {");
+    writeLine(javaScript, 2, "return false;");
+    writeLine(javaScript, 1, "}");
+    if (!checks.isEmpty()) {
+      writeLine(javaScript, 1, "let property;");
+    }
+    for (String check : checks) {
+      writeLine(javaScript, 1, check);
+      if (check.startsWith("if ")) {
+        writeLine(javaScript, 2, "return false;");
+        writeLine(javaScript, 1, "}");
+      }
+    }
+    writeLine(javaScript, 1, "return true;");
+    writeLine(javaScript, 0, "}");
+    writeLine(javaScript, 0, "export function decode" + decoderName + "(json) {");
+    writeLine(javaScript, 1, "const value = JSON.parse(json);");
+    writeLine(javaScript, 1, "if (!is" + decoderName + "(value)) {");
+    writeLine(javaScript, 2,
+        "throw new TypeError(\"The JSON is not a valid " + fullClassName + "\");");
+    writeLine(javaScript, 1, "}");
+    writeLine(javaScript, 1, "return value;");
+    writeLine(javaScript, 0, "}");
+
+    writeLine(declarations, 0, "// Generated from " + schema.getUri());
+    writeLine(declarations, 0, "export declare function is" + decoderName
+            + "(value: unknown): value is " + fullClassName + ";");
+    writeLine(declarations, 0,
+        "export declare function decode" + decoderName + "(json: string): " + fullClassName + ";");
+  }
+
+  /**
+   * Returns a JavaScript expression that is true if the value matches the schema. Enum values of
+   * the checked schemas are added to the enum sets of this class. Array items are checked inline,
+   * unless they refer back to an array being checked, in which case they are not checked.
+   */
+  private String checkFor(
+      Schema schema, String value, List<String> enumSets, Set<Schema> visiting) {
+    TypeScriptBuilder builder = typeScriptCodeGenerator.get(schema);
+    if (builder.isClass()) {
+      return "is" + builder.getDecoderName() + "(" + value + ")";
+    }
+
+    String enumValues = enumLiterals(schema.getEnums());
+    if (enumValues != null) {
+      enumSets.add(enumValues);
+      return getEnumSetName(enumSets.size() - 1) + ".has(" + value + ")";
+    }
+
+    Collection<String> types = new CombinedSchema(schema).getInferredTypes();
+    List<String> parts = new ArrayList<>();
+    // An unrecognized type is not checked, so the value could be anything.
+    boolean unrecognized = false;
+    for (String type : types) {
+      switch (type) {
+        case "string":
+        case "number":
+        case "boolean":
+          parts.add("typeof " + value + " === \"" + type + "\"");
+          break;
+        case "integer":
+          if (!types.contains("number")) {
+            parts.add("Number.isInteger(" + value + ")");
+          }
+          break;
+        case "null":
+          parts.add(value + " === null");
+          break;
+        case "object":
+          parts.add("typeof " + value + " === \"object\" && " + value + " !== null && !Array.isArray("
+              + value + ")");
+          break;
+        case "array":
+          Schema items = schema.getItems();
+          String itemCheck = "true";
+          if (items != null && visiting.add(schema)) {
+            itemCheck = checkFor(items, "item", enumSets, visiting);
+            visiting.remove(schema);
+          }
+          parts.add("true".equals(itemCheck)
+                  ? "Array.isArray(" + value + ")"
+                  : "Array.isArray(" + value + ") && " + value + ".every(item => " + itemCheck
+                      + ")");
+          break;
+        default:
+          unrecognized = true;
+          break;
+      }
+    }
+    if (parts.isEmpty() || unrecognized) {
+      return "true";
+    }
+    if (parts.size() == 1) {
+      return parts.get(0);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (String part : parts) {
+      if (sb.length() > 0) {
+        sb.append(" || ");
+      }
+      sb.append("(").append(part).append(")");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the enum values as a list of JavaScript literals, or null if there are none or any is
+   * not a primitive, as a Set only matches objects and arrays by identity.
+   */
+  private static String enumLiterals(List<Object> enums) {
+    if (enums == null || enums.isEmpty()) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Object value : enums) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      if (value == null || JSONObject.NULL.equals(value)) {
+        sb.append("null");
+      } else if (value instanceof String) {
+        sb.append(JSONObject.quote((String) value));
+      } else if (value instanceof Number || value instanceof Boolean) {
+        sb.append(value);
+      } else {
+        return null;
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the full class name as a single identifier, for the names of the decoders.
+   */
+  String getDecoderName() {
+    return fullClassName.replace('.', '_');
+  }
+
+  private String getEnumSetName(int index) {
+    return "ENUM_" + getDecoderName() + "_" + index;
+  }
+
+  /**
+   * Returns the name of the top-level type that the class is declared in.
+   */
+  String getRootClassName() {
+    TypeScriptBuilder builder = this;
+    while (builder.parent != null) {
+      builder = builder.parent;
+    }
+    return builder.baseClassName;
+  }
+
   public TypeScriptBuilder getParent() {
     return parent;
   }
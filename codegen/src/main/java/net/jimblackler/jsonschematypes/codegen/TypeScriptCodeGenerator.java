@@ -3,23 +3,172 @@ package net.jimblackler.jsonschematypes.codegen;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import net.jimblackler.jsonschemafriend.Schema;
 
 public class TypeScriptCodeGenerator implements CodeGenerator {
   private final Map<URI, TypeScriptBuilder> builtClasses = new HashMap<>();
+  private final Map<String, TypeScriptBuilder> builtShapes = new HashMap<>();
+  private final Queue<TypeScriptBuilder> pending = new ArrayDeque<>();
+  private final Set<String> reservedClassNames = new HashSet<>();
+  private SchemaShapes schemaShapes;
+  private boolean decoders;
 
+  /**
+   * Returns the builder for the schema, creating it if needed. Newly created builders are queued
+   * and are not usable until {@link #process()} has run.
+   */
   TypeScriptBuilder get(Schema schema) {
     URI uri = schema.getUri();
     if (builtClasses.containsKey(uri)) {
       return builtClasses.get(uri);
     }
 
-    return new TypeScriptBuilder(this, schema);
+    if (schemaShapes == null || schema.getParent() == null) {
+      return create(schema);
+    }
+
+    String shape = schemaShapes.keyFor(schema);
+    TypeScriptBuilder existing = builtShapes.get(shape);
+    if (existing != null) {
+      register(uri, existing);
+      existing.addSharedUri(uri);
+      return existing;
+    }
+    TypeScriptBuilder typeScriptBuilder = create(schema);
+    if (typeScriptBuilder.isClass()) {
+      builtShapes.putIfAbsent(shape, typeScriptBuilder);
+    }
+    return typeScriptBuilder;
+  }
+
+  private TypeScriptBuilder create(Schema schema) {
+    TypeScriptBuilder typeScriptBuilder = new TypeScriptBuilder(this, schema);
+    pending.add(typeScriptBuilder);
+    return typeScriptBuilder;
+  }
+
+  /**
+   * Links all queued builders and every builder they reference, then resolves their type names.
+   * Both steps use explicit work lists instead of recursion, so that very deep schemas cannot
+   * overflow the stack. A schema reached a second time resolves to its existing builder.
+   */
+  void process() {
+    List<TypeScriptBuilder> linked = new ArrayList<>();
+    while (!pending.isEmpty()) {
+      TypeScriptBuilder typeScriptBuilder = pending.poll();
+      if (typeScriptBuilder.isLinked()) {
+        continue;
+      }
+
+      // Full class names are built from the parent's, so unlinked ancestors are linked first.
+      Deque<TypeScriptBuilder> ancestry = new ArrayDeque<>();
+      for (TypeScriptBuilder builder = typeScriptBuilder; builder != null && !builder.isLinked();) {
+        ancestry.push(builder);
+        Schema parent = builder.getSchema().getParent();
+        builder = parent == null ? null : get(parent);
+      }
+      while (!ancestry.isEmpty()) {
+        TypeScriptBuilder builder = ancestry.pop();
+        builder.link();
+        linked.add(builder);
+        for (Schema referenced : builder.getReferencedSchemas()) {
+          get(referenced);
+        }
+      }
+    }
+
+    // Array type names are built from the type name of their items, so items are resolved first.
+    Set<TypeScriptBuilder> onStack = new HashSet<>();
+    for (TypeScriptBuilder typeScriptBuilder : linked) {
+      Deque<TypeScriptBuilder> stack = new ArrayDeque<>();
+      stack.push(typeScriptBuilder);
+      onStack.add(typeScriptBuilder);
+      while (!stack.isEmpty()) {
+        TypeScriptBuilder builder = stack.peek();
+        if (builder.getTypeName() != null) {
+          stack.pop();
+          onStack.remove(builder);
+          continue;
+        }
+        TypeScriptBuilder items = builder.getItemsBuilder();
+        if (items != null && items.getTypeName() == null && onStack.add(items)) {
+          stack.push(items);
+          continue;
+        }
+        builder.resolveTypeName();
+        stack.pop();
+        onStack.remove(builder);
+      }
+    }
+  }
+
+  /**
+   * Sets whether inline sub-schemas with the same structure should share a single generated type,
+   * rather than each producing its own class. Top-level schemas are never merged.
+   *
+   * @param deduplicate true to merge structurally identical sub-schemas.
+   */
+  public void setDeduplicate(boolean deduplicate) {
+    schemaShapes = deduplicate ? new SchemaShapes() : null;
+  }
+
+  /**
+   * Sets whether decoders should be generated alongside the types: for each class, a guard,
+   * isX(value), that checks a parsed value against its schema, and decodeX(json), that parses JSON
+   * and throws a TypeError if it does not match. The checks are specialized to each schema, as
+   * straight-line typeof tests and lookups in Set constants for enums. The decoders are plain
+   * JavaScript, written to decoders.js, with their declarations in decoders.d.ts, so that they run
+   * in Node without compilation.
+   *
+   * @param decoders true to generate decoders.
+   */
+  public void setDecoders(boolean decoders) {
+    this.decoders = decoders;
+  }
+
+  boolean getDecoders() {
+    return decoders;
+  }
+
+  /**
+   * Prevents top-level classes and namespaces being generated with the given names, for example
+   * because types of those names were generated from another partition into the same file.
+   *
+   * @param classNames The names to avoid.
+   */
+  public void reserveClassNames(Collection<String> classNames) {
+    reservedClassNames.addAll(classNames);
+  }
+
+  boolean isReservedClassName(String className) {
+    return reservedClassNames.contains(className);
+  }
+
+  /**
+   * Returns the names of the top-level classes and namespaces generated so far.
+   */
+  public Collection<String> getTopLevelClassNames() {
+    Collection<String> classNames = new LinkedHashSet<>();
+    for (TypeScriptBuilder builder : builtClasses.values()) {
+      if (builder.isLinked() && builder.getParent() == null) {
+        classNames.add(builder.getRootClassName());
+      }
+    }
+    return classNames;
   }
 
   public void register(URI uri, TypeScriptBuilder typeScriptBuilder) {
@@ -29,6 +178,7 @@ public class TypeScriptCodeGenerator implements CodeGenerator {
   @Override
   public void build(Schema schema) {
     get(schema);
+    process();
   }
 
   public void output(OutputStream stream) {
@@ -37,19 +187,60 @@ public class TypeScriptCodeGenerator implements CodeGenerator {
     }
   }
 
+  /**
+   * Writes the types to a writer, which is flushed but left open. This allows the output of several
+   * generators to be combined in one file.
+   */
+  public void output(Writer writer) {
+    PrintWriter printWriter = new PrintWriter(writer);
+    _output(printWriter);
+    printWriter.flush();
+  }
+
   public void output(Path out) throws IOException {
     out.toFile().mkdirs();
     try (PrintWriter printWriter = new PrintWriter(out.resolve("types.ts").toFile())) {
       _output(printWriter);
     }
+    if (decoders) {
+      try (PrintWriter javaScript = new PrintWriter(out.resolve("decoders.js").toFile());
+           PrintWriter declarations = new PrintWriter(out.resolve("decoders.d.ts").toFile())) {
+        outputDecoders(javaScript, declarations);
+      }
+    }
+  }
+
+  /**
+   * Writes the decoders to a writer, and their declarations to another, which are flushed but left
+   * open. The declarations import the types from "./types". To combine the decoders of several
+   * generators in one file, add them to a {@link TypeScriptDecoders} instead.
+   */
+  public void outputDecoders(Writer javaScript, Writer declarations) {
+    TypeScriptDecoders typeScriptDecoders = new TypeScriptDecoders();
+    typeScriptDecoders.add(this);
+    typeScriptDecoders.write(javaScript, declarations);
   }
 
   private void _output(PrintWriter printWriter) {
-    for (Map.Entry<URI, TypeScriptBuilder> entry : new HashSet<>(builtClasses.entrySet())) {
-      TypeScriptBuilder builder = entry.getValue();
+    // Builders may be registered under several URIs, so each is visited once.
+    for (TypeScriptBuilder builder : new LinkedHashSet<>(builtClasses.values())) {
       if (builder.getParent() == null) {
         builder.write(printWriter, 0);
       }
     }
   }
+
+  /**
+   * Returns the builders of the classes generated so far, each once.
+   */
+  Collection<TypeScriptBuilder> getClasses() {
+    Collection<TypeScriptBuilder> classes = new ArrayList<>();
+    // Builders may be registered under several URIs.
+    for (TypeScriptBuilder builder : new LinkedHashSet<>(builtClasses.values())) {
+      if (builder.isClass()) {
+        classes.add(builder);
+      }
+    }
+    return classes;
+  }
 }
@@ -0,0 +1,89 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The decoders of the classes of one or more TypeScript generators, such as those of the
+ * partitions of a schema set, to be written together to decoders.js and decoders.d.ts. A decoder
+ * made by more than one generator is kept once, and the declarations share a single import of the
+ * types. Only the text of the decoders is held, so generators need not be kept once added.
+ */
+public class TypeScriptDecoders {
+  private final Map<String, Decoder> decoders = new LinkedHashMap<>();
+
+  /**
+   * Adds the decoders of the classes of a generator, apart from any already added.
+   *
+   * @param typeScriptCodeGenerator The generator, after its schemas are built.
+   */
+  public void add(TypeScriptCodeGenerator typeScriptCodeGenerator) {
+    for (TypeScriptBuilder builder : typeScriptCodeGenerator.getClasses()) {
+      String decoderName = builder.getDecoderName();
+      if (decoders.containsKey(decoderName)) {
+        continue;
+      }
+      StringWriter javaScript = new StringWriter();
+      StringWriter declarations = new StringWriter();
+      try (PrintWriter javaScriptWriter = new PrintWriter(javaScript);
+           PrintWriter declarationsWriter = new PrintWriter(declarations)) {
+        builder.writeDecoders(javaScriptWriter, declarationsWriter);
+      }
+      decoders.put(decoderName,
+          new Decoder(builder.getRootClassName(), javaScript.toString(), declarations.toString()));
+    }
+  }
+
+  /**
+   * Adds the decoders of another set, apart from any already added.
+   */
+  public void add(TypeScriptDecoders other) {
+    for (Map.Entry<String, Decoder> entry : other.decoders.entrySet()) {
+      decoders.putIfAbsent(entry.getKey(), entry.getValue());
+    }
+  }
+
+  public boolean isEmpty() {
+    return decoders.isEmpty();
+  }
+
+  /**
+   * Writes the decoders to a writer, and their declarations, after an import of the types they
+   * use from "./types", to another. The writers are flushed but left open.
+   */
+  public void write(Writer javaScript, Writer declarations) {
+    PrintWriter javaScriptWriter = new PrintWriter(javaScript);
+    PrintWriter declarationsWriter = new PrintWriter(declarations);
+    Set<String> rootClassNames = new LinkedHashSet<>();
+    for (Decoder decoder : decoders.values()) {
+      rootClassNames.add(decoder.rootClassName);
+    }
+    if (!rootClassNames.isEmpty()) {
+      declarationsWriter.println(
+          "import { " + String.join(", ", rootClassNames) + " } from \"./types\";");
+    }
+    for (Decoder decoder : decoders.values()) {
+      javaScriptWriter.print(decoder.javaScript);
+      declarationsWriter.print(decoder.declarations);
+    }
+    javaScriptWriter.flush();
+    declarationsWriter.flush();
+  }
+
+  private static class Decoder {
+    final String rootClassName;
+    final String javaScript;
+    final String declarations;
+
+    Decoder(String rootClassName, String javaScript, String declarations) {
+      this.rootClassName = rootClassName;
+      this.javaScript = javaScript;
+      this.declarations = declarations;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compiles a class with CBOR codecs, and checks its encoding and that data survives a round trip.
+ */
+public class CborCodecsTest {
+  private static Class<?> sampleClass;
+
+  @BeforeAll
+  static void compile() throws CodeGenerationException, ReflectiveOperationException,
+                               URISyntaxException {
+    JavaCodeGenerator javaCodeGenerator = new JavaCodeGenerator("org.example.cbor", "map");
+    javaCodeGenerator.setCborCodecs(true);
+    // The schema has a property called "declared", whose key field could clash with the set of
+    // declared names.
+    CodeGeneration.build(
+        CborCodecsTest.class.getResource("/cbor/sample.json").toURI(), javaCodeGenerator);
+    ClassLoader classLoader =
+        InMemoryCompiler.compile(javaCodeGenerator, CborCodecsTest.class.getClassLoader());
+    sampleClass = classLoader.loadClass("org.example.cbor.Sample");
+  }
+
+  @Test
+  void minimalWidthIntegers() throws ReflectiveOperationException {
+    // A one-entry map, the precomputed header and name of "count", then the value.
+    byte[] prefix = {(byte) 0xa1, 0x65, 'c', 'o', 'u', 'n', 't'};
+    assertArrayEquals(concat(prefix, 0x05), toCbor(sample("count", 5)));
+    assertArrayEquals(concat(prefix, 0x18, 0x18), toCbor(sample("count", 24)));
+    assertArrayEquals(concat(prefix, 0x19, 0x01, 0xf4), toCbor(sample("count", 500)));
+    assertArrayEquals(
+        concat(prefix, 0x1a, 0x00, 0x01, 0x11, 0x70), toCbor(sample("count", 70000)));
+    assertArrayEquals(concat(prefix, 0x20), toCbor(sample("count", -1)));
+  }
+
+  @Test
+  void precomputedKeys() throws ReflectiveOperationException {
+    // The name of the property is the same as the name of the field of declared names.
+    assertArrayEquals(new byte[] {(byte) 0xa1, 0x68, 'd', 'e', 'c', 'l', 'a', 'r', 'e', 'd', 0x61,
+                          'x'},
+        toCbor(sample("declared", "x")));
+  }
+
+  @Test
+  void roundTrip() throws ReflectiveOperationException {
+    Map<String, Object> child = new LinkedHashMap<>();
+    child.put("id", 70000);
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("extra", "x");
+    data.put("count", 3000000000L);
+    data.put("declared", "yes");
+    data.put("child", child);
+    data.put("list", Arrays.asList(1, "two", null, 2.5));
+
+    byte[] bytes = toCbor(sampleClass.getConstructor(Map.class).newInstance(data));
+    Object decoded = sampleClass.getMethod("fromCbor", byte[].class).invoke(null, bytes);
+    assertEquals(data, sampleClass.getMethod("getMap").invoke(decoded));
+  }
+
+  private static Object sample(String key, Object value) throws ReflectiveOperationException {
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put(key, value);
+    return sampleClass.getConstructor(Map.class).newInstance(data);
+  }
+
+  private static byte[] toCbor(Object sample) throws ReflectiveOperationException {
+    return (byte[]) sampleClass.getMethod("toCbor").invoke(sample);
+  }
+
+  private static byte[] concat(byte[] prefix, int... rest) {
+    byte[] bytes = Arrays.copyOf(prefix, prefix.length + rest.length);
+    for (int idx = 0; idx != rest.length; idx++) {
+      bytes[prefix.length + idx] = (byte) rest[idx];
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,103 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.math.BigDecimal;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compiles a class with and without equality methods, and checks the rules of JsonEquality: numbers
+ * compare by value, property order does not matter, and equal instances hash the same.
+ */
+public class EqualityMethodsTest {
+  private static Class<?> sampleClass;
+  private static Class<?> identityClass;
+
+  @BeforeAll
+  static void compile() throws CodeGenerationException, ReflectiveOperationException,
+                               URISyntaxException {
+    sampleClass = compile("org.example.equality", true);
+    identityClass = compile("org.example.identity", false);
+  }
+
+  @Test
+  void numbersCompareByValue() throws ReflectiveOperationException {
+    assertEqualAndSameHash(sample("amount", 1), sample("amount", 1.0));
+    assertEqualAndSameHash(sample("amount", 1), sample("amount", 1L));
+    assertEqualAndSameHash(sample("amount", 0.5), sample("amount", 0.5f));
+    assertEqualAndSameHash(sample("amount", 1.1), sample("amount", new BigDecimal("1.10")));
+    assertEqualAndSameHash(sample("amount", 3000000000L), sample("amount", 3e9));
+    assertNotEquals(sample("amount", 1), sample("amount", 1.5));
+    assertNotEquals(sample("amount", 1), sample("amount", 2L));
+  }
+
+  @Test
+  void arraysCompareItems() throws ReflectiveOperationException {
+    assertEqualAndSameHash(
+        sample("tags", Arrays.asList(1, 2.0)), sample("tags", Arrays.asList(1.0, 2L)));
+    assertNotEquals(sample("tags", Arrays.asList(1, 2)), sample("tags", Arrays.asList(2, 1)));
+    assertNotEquals(sample("tags", Arrays.asList(1, 2)), sample("tags", Arrays.asList(1, 2, 3)));
+  }
+
+  @Test
+  void propertiesCompareWhateverTheirOrder() throws ReflectiveOperationException {
+    Map<String, Object> first = new LinkedHashMap<>();
+    first.put("name", "a");
+    first.put("amount", 2);
+    first.put("extra", 4);
+    Map<String, Object> second = new LinkedHashMap<>();
+    second.put("extra", 4.0);
+    second.put("amount", 2.0);
+    second.put("name", "a");
+    assertEqualAndSameHash(newSample(first), newSample(second));
+
+    // A property only one side has, declared or not, makes them unequal.
+    second.put("other", 1);
+    assertNotEquals(newSample(first), newSample(second));
+    second.remove("other");
+    second.remove("name");
+    assertNotEquals(newSample(first), newSample(second));
+  }
+
+  @Test
+  void identityWithoutTheOption() throws ReflectiveOperationException {
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("amount", 1);
+    Object instance = identityClass.getConstructor(Map.class).newInstance(data);
+    assertEquals(instance, instance);
+    assertNotEquals(instance, identityClass.getConstructor(Map.class).newInstance(data));
+  }
+
+  private static void assertEqualAndSameHash(Object a, Object b) {
+    assertEquals(a, b);
+    assertEquals(b, a);
+    assertEquals(a.hashCode(), b.hashCode());
+  }
+
+  private static Object sample(String key, Object value) throws ReflectiveOperationException {
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put(key, value);
+    return newSample(data);
+  }
+
+  private static Object newSample(Map<String, Object> data) throws ReflectiveOperationException {
+    return sampleClass.getConstructor(Map.class).newInstance(data);
+  }
+
+  private static Class<?> compile(String packageName, boolean equalityMethods)
+      throws CodeGenerationException, ReflectiveOperationException, URISyntaxException {
+    JavaCodeGenerator javaCodeGenerator = new JavaCodeGenerator(packageName, "map");
+    javaCodeGenerator.setEqualityMethods(equalityMethods);
+    CodeGeneration.build(
+        EqualityMethodsTest.class.getResource("/equality/sample.json").toURI(), javaCodeGenerator);
+    ClassLoader classLoader =
+        InMemoryCompiler.compile(javaCodeGenerator, EqualityMethodsTest.class.getClassLoader());
+    return classLoader.loadClass(packageName + ".Sample");
+  }
+}
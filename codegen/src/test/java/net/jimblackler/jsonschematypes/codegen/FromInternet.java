@@ -13,8 +13,10 @@ import java.util.Collection;
 import java.util.List;
 import org.json.JSONArray;
 import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.TestFactory;
 
+@Tag("network")
 public class FromInternet {
   public static final FileSystem FILE_SYSTEM = FileSystems.getDefault();
 
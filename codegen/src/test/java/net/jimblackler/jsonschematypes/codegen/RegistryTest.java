@@ -0,0 +1,87 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import net.jimblackler.jsonschemafriend.Schema;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Generates a registry for a schema set generated in two partitions, and checks that it finds the
+ * classes of both, and that the registry is counted in the size of the code.
+ */
+public class RegistryTest {
+  @Test
+  void partitioned() throws CodeGenerationException, ReflectiveOperationException,
+                            URISyntaxException {
+    Path root = Paths.get(RegistryTest.class.getResource("/registry").toURI());
+    JavaCodeGenerator registryGenerator = new JavaCodeGenerator("org.example.registry", "map");
+    registryGenerator.setRegistryClassName("SchemaTypes");
+    List<JavaCodeGenerator> generators = new ArrayList<>();
+    CodeGeneration.buildPartitioned(root, new SchemaDiscovery(), () -> {
+      JavaCodeGenerator javaCodeGenerator = new JavaCodeGenerator("org.example.registry", "map");
+      generators.add(javaCodeGenerator);
+      return new PartitionGenerator() {
+        @Override
+        public void build(Schema schema) throws CodeGenerationException {
+          javaCodeGenerator.build(schema);
+        }
+
+        @Override
+        public void complete() {
+          registryGenerator.addToRegistry(javaCodeGenerator);
+        }
+      };
+    });
+    assertEquals(2, generators.size());
+
+    List<JavaCodeGenerator> compiled = new ArrayList<>(generators);
+    compiled.add(registryGenerator);
+    ClassLoader classLoader =
+        InMemoryCompiler.compile(compiled, RegistryTest.class.getClassLoader());
+    Method typeFor = classLoader.loadClass("org.example.registry.SchemaTypes")
+                         .getMethod("typeFor", String.class);
+    int found = 0;
+    for (JavaCodeGenerator javaCodeGenerator : generators) {
+      for (Map.Entry<String, JavaRegistryBuilder.Entry> entry :
+          javaCodeGenerator.getRegistryEntries().entrySet()) {
+        Class<?> type = (Class<?>) typeFor.invoke(null, entry.getKey());
+        assertEquals(entry.getValue().className, type.getCanonicalName());
+        found++;
+      }
+    }
+    // Each schema has a class for itself and one for its object property, if it has one.
+    assertTrue(found >= 3, "Only " + found + " classes were registered");
+    assertNull(typeFor.invoke(null, "urn:unknown"));
+  }
+
+  @Test
+  void codeSizeCountsRegistry() throws CodeGenerationException, IOException, URISyntaxException {
+    URI uri = RegistryTest.class.getResource("/registry/person.json").toURI();
+    JavaCodeGenerator withoutRegistry = new JavaCodeGenerator("org.example.registry", "map");
+    CodeGeneration.build(uri, withoutRegistry);
+    JavaCodeGenerator withRegistry = new JavaCodeGenerator("org.example.registry", "map");
+    withRegistry.setRegistryClassName("SchemaTypes");
+    CodeGeneration.build(uri, withRegistry);
+
+    // Counted before output, as a build that checks a budget does.
+    CodeSize before = withRegistry.getCodeSize();
+    assertTrue(before.getClassCount() > withoutRegistry.getCodeSize().getClassCount());
+    assertTrue(before.getMethodCount() > withoutRegistry.getCodeSize().getMethodCount());
+    withRegistry.output(new ByteArrayOutputStream());
+    CodeSize after = withRegistry.getCodeSize();
+    assertEquals(before.getClassCount(), after.getClassCount());
+    assertEquals(before.getMethodCount(), after.getMethodCount());
+  }
+}
@@ -0,0 +1,93 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.jimblackler.jsonschemafriend.Schema;
+import net.jimblackler.jsonschemafriend.SchemaException;
+import net.jimblackler.jsonschemafriend.SchemaStore;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Loads classes for schemas at runtime, and checks the cache: hits, eviction of the least recently
+ * used schema, and that cached classes are returned while another schema compiles.
+ */
+public class RuntimeTypesTest {
+  @Test
+  void cacheHits() throws CodeGenerationException, SchemaException, URISyntaxException {
+    RuntimeTypes runtimeTypes = new RuntimeTypes(RuntimeTypesTest::newGenerator, 10);
+    Class<?> person = runtimeTypes.load(schema("/registry/person.json"));
+    assertEquals("Person", person.getSimpleName());
+    assertSame(person, runtimeTypes.load(schema("/registry/person.json")));
+    assertEquals(1, runtimeTypes.size());
+  }
+
+  @Test
+  void leastRecentlyUsedIsEvicted()
+      throws CodeGenerationException, SchemaException, URISyntaxException {
+    RuntimeTypes runtimeTypes = new RuntimeTypes(RuntimeTypesTest::newGenerator, 2);
+    Class<?> person = runtimeTypes.load(schema("/registry/person.json"));
+    Class<?> product = runtimeTypes.load(schema("/registry/product.json"));
+    // Using the person class makes the product class the least recently used.
+    assertSame(person, runtimeTypes.load(schema("/registry/person.json")));
+    runtimeTypes.load(schema("/equality/sample.json"));
+    assertEquals(2, runtimeTypes.size());
+    assertSame(person, runtimeTypes.load(schema("/registry/person.json")));
+    assertNotSame(product, runtimeTypes.load(schema("/registry/product.json")));
+  }
+
+  @Test
+  void cachedClassesDoNotWaitForCompilation() throws Exception {
+    AtomicBoolean block = new AtomicBoolean();
+    CountDownLatch compiling = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    RuntimeTypes runtimeTypes = new RuntimeTypes(() -> {
+      if (block.get()) {
+        compiling.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return newGenerator();
+    }, 10);
+    Class<?> person = runtimeTypes.load(schema("/registry/person.json"));
+
+    block.set(true);
+    Schema product = schema("/registry/product.json");
+    CompletableFuture<Class<?>> productClass = CompletableFuture.supplyAsync(() -> {
+      try {
+        return runtimeTypes.load(product);
+      } catch (CodeGenerationException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    compiling.await();
+    Schema personAgain = schema("/registry/person.json");
+    try {
+      assertSame(person, assertTimeoutPreemptively(
+                             Duration.ofSeconds(10), () -> runtimeTypes.load(personAgain)));
+    } finally {
+      release.countDown();
+    }
+    assertEquals("Product", productClass.get().getSimpleName());
+  }
+
+  private static JavaCodeGenerator newGenerator() {
+    return new JavaCodeGenerator("org.example.runtime", "map");
+  }
+
+  private static Schema schema(String path) throws SchemaException, URISyntaxException {
+    URI uri = RuntimeTypesTest.class.getResource(path).toURI();
+    return new SchemaStore().loadSchema(uri);
+  }
+}
@@ -0,0 +1,63 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Edits the schemas of a watched directory, and checks that only the partitions that contain the
+ * changed files are generated again, and that the files of removed schemas are deleted.
+ */
+public class SchemaWatcherTest {
+  @Test
+  void regeneratesChangedPartitions(@TempDir Path directory)
+      throws CodeGenerationException, IOException {
+    Path schemas = Files.createDirectories(directory.resolve("schemas"));
+    Path person = writeSchema(schemas.resolve("person.json"), "name");
+    Path product = writeSchema(schemas.resolve("product.json"), "price");
+    Path javaOut = directory.resolve("java");
+    Path generatedPackage = javaOut.resolve("org/example/watched");
+
+    try (SchemaWatcher watcher = new SchemaWatcher(schemas, new SchemaDiscovery(),
+             () -> new JavaCodeGenerator("org.example.watched", "map"),
+             TypeScriptCodeGenerator::new, javaOut, directory.resolve("typescript"))) {
+      assertEquals(new HashSet<>(Arrays.asList(person.toUri(), product.toUri())),
+          new HashSet<>(watcher.generate()));
+      assertTrue(Files.exists(generatedPackage.resolve("Person.java")));
+      assertTrue(Files.exists(generatedPackage.resolve("Product.java")));
+
+      // Nothing changed, so nothing is generated.
+      assertEquals(Collections.emptyList(), watcher.update(Collections.emptySet()));
+
+      writeSchema(person, "title");
+      assertEquals(Collections.singletonList(person.toUri()),
+          watcher.update(Collections.singleton(person)));
+      String personCode = new String(
+          Files.readAllBytes(generatedPackage.resolve("Person.java")), StandardCharsets.UTF_8);
+      assertTrue(personCode.contains("getTitle"));
+      assertFalse(personCode.contains("getName"));
+      assertTrue(Files.exists(generatedPackage.resolve("Product.java")));
+
+      Files.delete(product);
+      assertEquals(Collections.emptyList(), watcher.update(Collections.singleton(product)));
+      assertFalse(Files.exists(generatedPackage.resolve("Product.java")));
+      assertTrue(Files.exists(generatedPackage.resolve("Person.java")));
+    }
+  }
+
+  private static Path writeSchema(Path path, String property) throws IOException {
+    String schema = "{\"type\": \"object\", \"properties\": {\"" + property
+        + "\": {\"type\": \"string\"}}}";
+    return Files.write(path, schema.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,98 @@
+package net.jimblackler.jsonschematypes.codegen;
+
+import static net.jimblackler.jsonschemafriend.StreamUtils.streamToString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Generates decoders for a test schema and runs a script against them with the local Node
+ * install, which is skipped if Node is not installed. Also checks that the decoders of several
+ * generators combine into one module.
+ */
+public class TypeScriptDecodersTest {
+  public static final FileSystem FILE_SYSTEM = FileSystems.getDefault();
+
+  @Test
+  void decoders() throws CodeGenerationException, IOException, InterruptedException,
+                         URISyntaxException {
+    assumeTrue(nodeInstalled(), "Node is not installed");
+
+    Path out = FILE_SYSTEM.getPath("out").resolve("decoders");
+    FileUtils.createOrEmpty(out);
+    TypeScriptCodeGenerator typeScriptCodeGenerator = new TypeScriptCodeGenerator();
+    typeScriptCodeGenerator.setDecoders(true);
+    CodeGeneration.build(
+        TypeScriptDecodersTest.class.getResource("/decoders/order.json").toURI(),
+        typeScriptCodeGenerator);
+    typeScriptCodeGenerator.output(out);
+
+    // The decoders are an ES module.
+    Files.write(out.resolve("package.json"), "{\"type\": \"module\"}".getBytes());
+    try (InputStream inputStream =
+             TypeScriptDecodersTest.class.getResourceAsStream("/decoders/check.js")) {
+      Files.copy(inputStream, out.resolve("check.js"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    Process process = new ProcessBuilder("node", "check.js")
+                          .directory(out.toFile())
+                          .redirectErrorStream(true)
+                          .start();
+    String output = streamToString(process.getInputStream());
+    assertEquals(0, process.waitFor(), output);
+  }
+
+  @Test
+  void combined() throws CodeGenerationException, URISyntaxException {
+    // The same schema built by two generators, as a document shared by two partitions would be.
+    URI person = TypeScriptDecodersTest.class.getResource("/registry/person.json").toURI();
+    TypeScriptDecoders decoders = new TypeScriptDecoders();
+    for (int idx = 0; idx != 2; idx++) {
+      TypeScriptCodeGenerator typeScriptCodeGenerator = new TypeScriptCodeGenerator();
+      CodeGeneration.build(person, typeScriptCodeGenerator);
+      decoders.add(typeScriptCodeGenerator);
+    }
+    TypeScriptCodeGenerator typeScriptCodeGenerator = new TypeScriptCodeGenerator();
+    CodeGeneration.build(
+        TypeScriptDecodersTest.class.getResource("/decoders/order.json").toURI(),
+        typeScriptCodeGenerator);
+    decoders.add(typeScriptCodeGenerator);
+
+    StringWriter javaScript = new StringWriter();
+    StringWriter declarations = new StringWriter();
+    decoders.write(javaScript, declarations);
+    assertEquals(1, count(declarations.toString(), "import "));
+    assertEquals(1, count(declarations.toString(), " Person,"));
+    assertEquals(1, count(javaScript.toString(), "export function isPerson("));
+    assertEquals(1, count(declarations.toString(), "export declare function isPerson("));
+  }
+
+  private static int count(String text, String part) {
+    int count = 0;
+    for (int idx = text.indexOf(part); idx != -1; idx = text.indexOf(part, idx + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+  private static boolean nodeInstalled() throws InterruptedException {
+    try {
+      Process process = new ProcessBuilder("node", "--version").redirectErrorStream(true).start();
+      streamToString(process.getInputStream());
+      return process.waitFor() == 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
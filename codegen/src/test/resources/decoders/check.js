@@ -0,0 +1,27 @@
+import assert from "node:assert";
+import { decodeOrder, isOrder } from "./decoders.js";
+
+const valid = {
+  id: "A1",
+  quantity: 2,
+  price: 9.5,
+  paid: true,
+  status: "shipped",
+  tags: ["gift"],
+  customer: { name: "Ada" },
+};
+assert.ok(isOrder(valid));
+assert.ok(isOrder({ id: 7, quantity: 1 }));
+assert.deepStrictEqual(decodeOrder(JSON.stringify(valid)), valid);
+
+assert.ok(!isOrder(null));
+assert.ok(!isOrder([]));
+assert.ok(!isOrder({ quantity: 1 }));
+assert.ok(!isOrder({ id: true, quantity: 1 }));
+assert.ok(!isOrder({ id: 7, quantity: 1.5 }));
+assert.ok(!isOrder({ id: 7, quantity: 1, price: "9.5" }));
+assert.ok(!isOrder({ id: 7, quantity: 1, paid: "yes" }));
+assert.ok(!isOrder({ id: 7, quantity: 1, status: "lost" }));
+assert.ok(!isOrder({ id: 7, quantity: 1, tags: ["gift", 3] }));
+assert.ok(!isOrder({ id: 7, quantity: 1, customer: {} }));
+assert.throws(() => decodeOrder("{\"id\": 7}"), TypeError);
@@ -1,10 +1,11 @@
 package net.jimblackler.jsonschematypes.plugin;
 
-import java.nio.file.Path;
 import org.gradle.api.Project;
+import org.gradle.api.file.Directory;
+import org.gradle.api.provider.Provider;
 
 public class Common {
-  public static Path getCodePath(Project project) {
-    return project.getBuildDir().toPath().resolve("generated").resolve("sources").resolve("jst");
+  public static Provider<Directory> getCodePath(Project project) {
+    return project.getLayout().getBuildDirectory().dir("generated/sources/jst");
   }
 }
@@ -1,49 +1,262 @@
 package net.jimblackler.jsonschematypes.plugin;
 
 import static net.jimblackler.jsonschematypes.codegen.CodeGeneration.build;
+import static net.jimblackler.jsonschematypes.codegen.CodeGeneration.buildPartitioned;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import net.jimblackler.jsonschematypes.codegen.CodeGenerationException;
 import net.jimblackler.jsonschematypes.codegen.CodeGenerator;
+import net.jimblackler.jsonschematypes.codegen.CodeSize;
+import net.jimblackler.jsonschematypes.codegen.ConcurrentMultiGenerator;
 import net.jimblackler.jsonschematypes.codegen.FileUtils;
 import net.jimblackler.jsonschematypes.codegen.JavaCodeGenerator;
-import net.jimblackler.jsonschematypes.codegen.MultiGenerator;
+import net.jimblackler.jsonschematypes.codegen.PartitionGenerator;
+import net.jimblackler.jsonschematypes.codegen.SchemaDiscovery;
+import net.jimblackler.jsonschematypes.codegen.SchemaPrefetcher;
 import net.jimblackler.jsonschematypes.codegen.TypeScriptCodeGenerator;
+import net.jimblackler.jsonschematypes.codegen.TypeScriptDecoders;
+import net.jimblackler.jsonschemafriend.Schema;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
-import org.gradle.api.tasks.SourceSet;
-import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 
-public class GenerateJsonSchemaTypesJavaTask extends DefaultTask {
+/**
+ * Generates Java and TypeScript types from the schemas in a directory. The task reads only its own
+ * properties when it runs, so it is compatible with the configuration cache.
+ */
+public abstract class GenerateJsonSchemaTypesJavaTask extends DefaultTask {
+  @InputDirectory
+  @PathSensitive(PathSensitivity.RELATIVE)
+  public abstract DirectoryProperty getSchemaDirectory();
+
+  @Input
+  public abstract Property<String> getPackageOut();
+
+  @Input
+  public abstract Property<String> getMode();
+
+  @Input
+  public abstract Property<Boolean> getDeduplicate();
+
+  @Input
+  public abstract Property<Boolean> getPartitioned();
+
+  @Input
+  @Optional
+  public abstract Property<String> getRegistryClassName();
+
+  // Only affects how fast the schemas are loaded, not the output.
+  @Internal
+  public abstract Property<Integer> getPrefetchThreads();
+
+  @Input
+  public abstract Property<Boolean> getStreamReaders();
+
+  @Input
+  public abstract Property<Boolean> getProjections();
+
+  @Input
+  public abstract Property<Boolean> getCborCodecs();
+
+  @Input
+  public abstract Property<Boolean> getBuilders();
+
+  @Input
+  public abstract Property<Boolean> getColumnBatches();
+
+  @Input
+  public abstract Property<Boolean> getCompact();
+
+  @Input
+  public abstract Property<Boolean> getAccessCounters();
+
+  @Input
+  public abstract Property<Boolean> getEqualityMethods();
+
+  @Input
+  public abstract Property<Boolean> getTypeScriptDecoders();
+
+  @Input
+  public abstract Property<Integer> getClassBudget();
+
+  @Input
+  public abstract Property<Integer> getMethodBudget();
+
+  @Input
+  public abstract ListProperty<String> getIncludes();
+
+  @Input
+  public abstract ListProperty<String> getExcludes();
+
+  @OutputDirectory
+  public abstract DirectoryProperty getOutputDirectory();
+
   @TaskAction
   public void generate() throws IOException, CodeGenerationException {
-    Project project = getProject();
-    SourceSet mainSourceSet = ((SourceSetContainer) project.getProperties().get("sourceSets"))
-                                  .getByName(SourceSet.MAIN_SOURCE_SET_NAME);
-    JsonSchemaTypesPluginExtension extension =
-        project.getExtensions().getByType(JsonSchemaTypesPluginExtension.class);
-    File resourcesDir = mainSourceSet.getOutput().getResourcesDir();
-    Path resources = resourcesDir.toPath().resolve(extension.getResourcesPath());
-    Path codePath = Common.getCodePath(getProject());
+    Path resources = getSchemaDirectory().get().getAsFile().toPath();
+    Path codePath = getOutputDirectory().get().getAsFile().toPath();
 
     FileUtils.createOrEmpty(codePath);
+    Path java = codePath.resolve("java");
+    java.toFile().mkdir();
+    Path typescript = codePath.resolve("typescript");
+    typescript.toFile().mkdir();
+
+    SchemaDiscovery discovery = new SchemaDiscovery(getIncludes().get(), getExcludes().get());
+    if (getPartitioned().get()) {
+      generatePartitioned(resources, discovery, java, typescript);
+      return;
+    }
+
     JavaCodeGenerator javaCodeGenerator =
-        new JavaCodeGenerator(extension.getPackageOut(), extension.getMode());
+        new JavaCodeGenerator(getPackageOut().get(), getMode().get());
     TypeScriptCodeGenerator typeScriptCodeGenerator = new TypeScriptCodeGenerator();
+    javaCodeGenerator.setDeduplicate(getDeduplicate().get());
+    javaCodeGenerator.setRegistryClassName(getRegistryClassName().getOrNull());
+    javaCodeGenerator.setStreamReaders(getStreamReaders().get());
+    javaCodeGenerator.setProjections(getProjections().get());
+    javaCodeGenerator.setCborCodecs(getCborCodecs().get());
+    javaCodeGenerator.setBuilders(getBuilders().get());
+    javaCodeGenerator.setColumnBatches(getColumnBatches().get());
+    javaCodeGenerator.setCompact(getCompact().get());
+    javaCodeGenerator.setAccessCounters(getAccessCounters().get());
+    javaCodeGenerator.setEqualityMethods(getEqualityMethods().get());
+    typeScriptCodeGenerator.setDeduplicate(getDeduplicate().get());
+    typeScriptCodeGenerator.setDecoders(getTypeScriptDecoders().get());
     List<CodeGenerator> generators = new ArrayList<>();
     generators.add(javaCodeGenerator);
     generators.add(typeScriptCodeGenerator);
-    build(resources.toUri().toURL(), new MultiGenerator(generators));
-    Path java = codePath.resolve("java");
-    java.toFile().mkdir();
+    // The Java and TypeScript generators share no state, so they run side by side.
+    try (ConcurrentMultiGenerator multiGenerator = new ConcurrentMultiGenerator(generators)) {
+      build(resources, discovery, multiGenerator,
+          getPrefetchThreads().get() > 0
+              ? new SchemaPrefetcher(getPrefetchThreads().get())
+              : null);
+      multiGenerator.finish();
+    }
+    checkBudget(javaCodeGenerator.getCodeSize());
     javaCodeGenerator.output(java);
-    Path typescript = codePath.resolve("typescript");
-    typescript.toFile().mkdir();
     typeScriptCodeGenerator.output(typescript);
   }
+
+  /**
+   * Reports the size of the generated code, and fails if it is over either budget.
+   */
+  private void checkBudget(CodeSize codeSize) {
+    int classBudget = getClassBudget().get();
+    int methodBudget = getMethodBudget().get();
+    if (classBudget == 0 && methodBudget == 0) {
+      getLogger().info("Generated " + codeSize);
+      return;
+    }
+    getLogger().lifecycle("Generated " + codeSize + " (budget: "
+        + (classBudget == 0 ? "any" : classBudget) + " classes, "
+        + (methodBudget == 0 ? "any" : methodBudget) + " methods)");
+    if ((classBudget != 0 && codeSize.getClassCount() > classBudget)
+        || (methodBudget != 0 && codeSize.getMethodCount() > methodBudget)) {
+      throw new GradleException("The generated code is over budget: " + codeSize
+          + ". Setting compact = true generates fewer classes and methods.");
+    }
+  }
+
+  private void generatePartitioned(
+      Path resources, SchemaDiscovery discovery, Path java, Path typescript)
+      throws IOException, CodeGenerationException {
+    // All partitions share one package, and one types.ts, so the names of top-level classes are
+    // carried over.
+    Collection<String> classNames = new HashSet<>();
+    Collection<String> typeScriptClassNames = new HashSet<>();
+    // Each partition would overwrite the registry of the one before, so a single registry is built
+    // for every partition, after they are all generated.
+    String registryClassName = getRegistryClassName().getOrNull();
+    JavaCodeGenerator registryGenerator;
+    if (registryClassName == null) {
+      registryGenerator = null;
+    } else {
+      registryGenerator = new JavaCodeGenerator(getPackageOut().get(), getMode().get());
+      registryGenerator.setRegistryClassName(registryClassName);
+      classNames.add(registryClassName);
+    }
+    List<CodeSize> codeSizes = new ArrayList<>();
+    // Decoders are combined, so that their declarations share one import of the types.
+    TypeScriptDecoders decoders = new TypeScriptDecoders();
+    try (PrintWriter typeScriptWriter = new PrintWriter(typescript.resolve("types.ts").toFile())) {
+      buildPartitioned(resources, discovery, () -> {
+        JavaCodeGenerator javaCodeGenerator =
+            new JavaCodeGenerator(getPackageOut().get(), getMode().get());
+        TypeScriptCodeGenerator typeScriptCodeGenerator = new TypeScriptCodeGenerator();
+        javaCodeGenerator.setDeduplicate(getDeduplicate().get());
+        javaCodeGenerator.setStreamReaders(getStreamReaders().get());
+        javaCodeGenerator.setProjections(getProjections().get());
+        javaCodeGenerator.setCborCodecs(getCborCodecs().get());
+        javaCodeGenerator.setBuilders(getBuilders().get());
+        javaCodeGenerator.setColumnBatches(getColumnBatches().get());
+        javaCodeGenerator.setCompact(getCompact().get());
+        javaCodeGenerator.setAccessCounters(getAccessCounters().get());
+        javaCodeGenerator.setEqualityMethods(getEqualityMethods().get());
+        typeScriptCodeGenerator.setDeduplicate(getDeduplicate().get());
+        typeScriptCodeGenerator.setDecoders(getTypeScriptDecoders().get());
+        javaCodeGenerator.reserveClassNames(classNames);
+        typeScriptCodeGenerator.reserveClassNames(typeScriptClassNames);
+        return new PartitionGenerator() {
+          @Override
+          public void build(Schema schema) throws CodeGenerationException {
+            javaCodeGenerator.build(schema);
+            typeScriptCodeGenerator.build(schema);
+          }
+
+          @Override
+          public void complete() throws CodeGenerationException {
+            try {
+              javaCodeGenerator.output(java);
+            } catch (IOException e) {
+              throw new CodeGenerationException(e);
+            }
+            typeScriptCodeGenerator.output(typeScriptWriter);
+            if (getTypeScriptDecoders().get()) {
+              decoders.add(typeScriptCodeGenerator);
+            }
+            if (registryGenerator != null) {
+              registryGenerator.addToRegistry(javaCodeGenerator);
+            }
+            classNames.addAll(javaCodeGenerator.getTopLevelClassNames());
+            typeScriptClassNames.addAll(typeScriptCodeGenerator.getTopLevelClassNames());
+            codeSizes.add(javaCodeGenerator.getCodeSize());
+          }
+        };
+      });
+    }
+    if (getTypeScriptDecoders().get()) {
+      try (PrintWriter javaScript = new PrintWriter(typescript.resolve("decoders.js").toFile());
+           PrintWriter declarations =
+               new PrintWriter(typescript.resolve("decoders.d.ts").toFile())) {
+        decoders.write(javaScript, declarations);
+      }
+    }
+    if (registryGenerator != null) {
+      registryGenerator.output(java);
+      codeSizes.add(registryGenerator.getCodeSize());
+    }
+    CodeSize codeSize = new CodeSize(0, 0);
+    for (CodeSize partitionSize : codeSizes) {
+      codeSize = codeSize.plus(partitionSize);
+    }
+    checkBudget(codeSize);
+  }
 }
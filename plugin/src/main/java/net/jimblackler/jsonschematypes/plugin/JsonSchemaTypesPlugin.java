@@ -3,42 +3,63 @@ package net.jimblackler.jsonschematypes.plugin;
 import static net.jimblackler.jsonschematypes.plugin.Common.getCodePath;
 
 import java.io.File;
-import java.nio.file.Path;
-import java.util.Collection;
-import java.util.HashSet;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
-import org.gradle.api.file.SourceDirectorySet;
 import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
 
+/**
+ * Registers the generateJsonSchemaTypes task. Everything is wired lazily, through providers, so
+ * that the plugin is compatible with the configuration cache: the task reads its inputs from its
+ * own properties, never from the project, and the source set learns of the generated directory,
+ * and so of the dependency on the task, from the task's output property.
+ */
 public class JsonSchemaTypesPlugin implements Plugin<Project> {
   @Override
-  public void apply(Project prejectIn) {
-    prejectIn.getExtensions().create("jsonSchemaTypes", JsonSchemaTypesPluginExtension.class);
-    prejectIn.afterEvaluate(project -> {
-      GenerateJsonSchemaTypesJavaTask task = project.getTasks().create(
-          "generateJsonSchemaTypes", GenerateJsonSchemaTypesJavaTask.class);
-      task.setGroup("build");
-      task.dependsOn(project.getTasks().getByName("processResources"));
-      project.getTasks().getByName("compileJava").dependsOn(task);
-
-      Path outPath = getCodePath(project);
-
+  public void apply(Project project) {
+    JsonSchemaTypesPluginExtension extension = project.getExtensions().create(
+        "jsonSchemaTypes", JsonSchemaTypesPluginExtension.class);
+    project.getPluginManager().withPlugin("java", plugin -> {
       SourceSet mainSourceSet = ((SourceSetContainer) project.getProperties().get("sourceSets"))
                                     .getByName(SourceSet.MAIN_SOURCE_SET_NAME);
-      {
-        SourceDirectorySet java = mainSourceSet.getJava();
-        Collection<File> srcDirs = new HashSet<>(java.getSrcDirs());
-        srcDirs.add(outPath.resolve("java").toFile());
-        java.setSrcDirs(srcDirs);
-      }
-      {
-        SourceDirectorySet resources = mainSourceSet.getResources();
-        Collection<File> srcDirs = new HashSet<>(resources.getSrcDirs());
-        srcDirs.add(outPath.resolve("typescript").toFile());
-        resources.setSrcDirs(srcDirs);
-      }
+      File resourcesDir = mainSourceSet.getOutput().getResourcesDir();
+
+      TaskProvider<GenerateJsonSchemaTypesJavaTask> task = project.getTasks().register(
+          "generateJsonSchemaTypes", GenerateJsonSchemaTypesJavaTask.class, generate -> {
+            generate.setGroup("build");
+            // Schemas are read from the processed resources.
+            generate.dependsOn(mainSourceSet.getProcessResourcesTaskName());
+            generate.getSchemaDirectory().set(project.getLayout().dir(
+                extension.getResourcesPath().map(path -> new File(resourcesDir, path))));
+            generate.getPackageOut().set(extension.getPackageOut());
+            generate.getMode().set(extension.getMode());
+            generate.getDeduplicate().set(extension.getDeduplicate());
+            generate.getPartitioned().set(extension.getPartitioned());
+            generate.getRegistryClassName().set(extension.getRegistryClassName());
+            generate.getPrefetchThreads().set(extension.getPrefetchThreads());
+            generate.getStreamReaders().set(extension.getStreamReaders());
+            generate.getProjections().set(extension.getProjections());
+            generate.getCborCodecs().set(extension.getCborCodecs());
+            generate.getBuilders().set(extension.getBuilders());
+            generate.getColumnBatches().set(extension.getColumnBatches());
+            generate.getCompact().set(extension.getCompact());
+            generate.getAccessCounters().set(extension.getAccessCounters());
+            generate.getEqualityMethods().set(extension.getEqualityMethods());
+            generate.getTypeScriptDecoders().set(extension.getTypeScriptDecoders());
+            generate.getClassBudget().set(extension.getClassBudget());
+            generate.getMethodBudget().set(extension.getMethodBudget());
+            generate.getIncludes().set(extension.getIncludes());
+            generate.getExcludes().set(extension.getExcludes());
+            generate.getOutputDirectory().set(getCodePath(project));
+          });
+
+      // Derived from the task's output, so compiling depends on the task.
+      mainSourceSet.getJava().srcDir(
+          task.flatMap(generate -> generate.getOutputDirectory().dir("java")));
+      // Not derived from the task, as the task depends on the processed resources.
+      mainSourceSet.getResources().srcDir(
+          getCodePath(project).map(directory -> directory.dir("typescript")));
     });
   }
-}
\ No newline at end of file
+}
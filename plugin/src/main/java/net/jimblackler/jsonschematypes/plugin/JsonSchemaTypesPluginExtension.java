@@ -1,31 +1,79 @@
 package net.jimblackler.jsonschematypes.plugin;
 
-public class JsonSchemaTypesPluginExtension {
-  private String resourcesPath = "";
-  private String packageOut = "org.example";
-  private String mode = "org.json";
+import java.util.Collections;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
 
-  public String getResourcesPath() {
-    return resourcesPath;
+/**
+ * The jsonSchemaTypes block of a build script. Its properties are lazy, so that they are read
+ * when the generation task runs, not when the plugin is applied.
+ */
+public abstract class JsonSchemaTypesPluginExtension {
+  public JsonSchemaTypesPluginExtension() {
+    getResourcesPath().convention("");
+    getPackageOut().convention("org.example");
+    getMode().convention("org.json");
+    getDeduplicate().convention(false);
+    getPartitioned().convention(false);
+    getPrefetchThreads().convention(0);
+    getStreamReaders().convention(false);
+    getProjections().convention(false);
+    getCborCodecs().convention(false);
+    getBuilders().convention(false);
+    getColumnBatches().convention(false);
+    getCompact().convention(false);
+    getAccessCounters().convention(false);
+    getEqualityMethods().convention(false);
+    getTypeScriptDecoders().convention(false);
+    getClassBudget().convention(0);
+    getMethodBudget().convention(0);
+    getIncludes().convention(Collections.singletonList("**.json"));
+    getExcludes().convention(Collections.emptyList());
   }
 
-  public void setResourcesPath(String resourcesPath) {
-    this.resourcesPath = resourcesPath;
-  }
+  public abstract Property<String> getResourcesPath();
 
-  public String getPackageOut() {
-    return packageOut;
-  }
+  public abstract Property<String> getPackageOut();
 
-  public void setPackageOut(String packageOut) {
-    this.packageOut = packageOut;
-  }
+  public abstract Property<String> getMode();
 
-  public String getMode() {
-    return mode;
-  }
+  public abstract Property<Boolean> getDeduplicate();
 
-  public void setMode(String mode) {
-    this.mode = mode;
-  }
+  public abstract Property<Boolean> getPartitioned();
+
+  public abstract Property<String> getRegistryClassName();
+
+  public abstract Property<Integer> getPrefetchThreads();
+
+  public abstract Property<Boolean> getStreamReaders();
+
+  public abstract Property<Boolean> getProjections();
+
+  public abstract Property<Boolean> getCborCodecs();
+
+  public abstract Property<Boolean> getBuilders();
+
+  public abstract Property<Boolean> getColumnBatches();
+
+  public abstract Property<Boolean> getCompact();
+
+  public abstract Property<Boolean> getAccessCounters();
+
+  public abstract Property<Boolean> getEqualityMethods();
+
+  public abstract Property<Boolean> getTypeScriptDecoders();
+
+  /**
+   * The most classes the generated code may have, or 0 for no limit.
+   */
+  public abstract Property<Integer> getClassBudget();
+
+  /**
+   * The most methods the generated code may have, or 0 for no limit.
+   */
+  public abstract Property<Integer> getMethodBudget();
+
+  public abstract ListProperty<String> getIncludes();
+
+  public abstract ListProperty<String> getExcludes();
 }
@@ -0,0 +1,56 @@
+package net.jimblackler.jsonschematypes.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates Java classes from the JSON Schemas in a directory while the annotated package (or
+ * type) is compiled. Typically placed on a package-info.java:
+ *
+ * <pre>
+ * &#64;JsonSchemaTypes(path = "src/main/resources/schemas")
+ * package com.example.myproject;
+ * </pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.PACKAGE, ElementType.TYPE})
+public @interface JsonSchemaTypes {
+  /**
+   * The directory of schemas. A relative path is resolved against the directory given by the
+   * {@code jsonschematypes.baseDir} processor option, or the working directory of the compiler if
+   * the option is not set.
+   */
+  String path();
+
+  /**
+   * The package of the generated classes. By default, the package of the annotated element.
+   */
+  String packageOut() default "";
+
+  /**
+   * The mode of the generated classes: "org.json", "map", "immutable" or "lazy".
+   */
+  String mode() default "org.json";
+
+  /**
+   * Glob patterns of the schema files to use, relative to the directory.
+   */
+  String[] includes() default {"**.json"};
+
+  /**
+   * Glob patterns of the schema files, or directories, to leave out.
+   */
+  String[] excludes() default {};
+
+  /**
+   * Whether inline sub-schemas with the same structure share a single generated type.
+   */
+  boolean deduplicate() default false;
+
+  /**
+   * The simple name of a registry class to generate, or "" for none.
+   */
+  String registryClassName() default "";
+}
@@ -0,0 +1,124 @@
+package net.jimblackler.jsonschematypes.processor;
+
+import com.helger.jcodemodel.writer.AbstractCodeWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import net.jimblackler.jsonschematypes.codegen.CodeGeneration;
+import net.jimblackler.jsonschematypes.codegen.CodeGenerationException;
+import net.jimblackler.jsonschematypes.codegen.JavaCodeGenerator;
+import net.jimblackler.jsonschematypes.codegen.SchemaDiscovery;
+
+/**
+ * Generates the classes requested by {@link JsonSchemaTypes} annotations during compilation. The
+ * generated sources are written through the compiler's Filer, so they are compiled in the same
+ * javac invocation, with no separate build step. Each generated file is attributed to the
+ * annotated element, which makes the processor isolating for Gradle's incremental compilation.
+ */
+public class JsonSchemaTypesProcessor extends AbstractProcessor {
+  private static final String BASE_DIR_OPTION = "jsonschematypes.baseDir";
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(JsonSchemaTypes.class.getName());
+  }
+
+  @Override
+  public Set<String> getSupportedOptions() {
+    return Collections.singleton(BASE_DIR_OPTION);
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(JsonSchemaTypes.class)) {
+      try {
+        generate(element, element.getAnnotation(JsonSchemaTypes.class));
+      } catch (CodeGenerationException | IOException e) {
+        processingEnv.getMessager().printMessage(
+            Diagnostic.Kind.ERROR, "Could not generate schema types: " + e, element);
+      }
+    }
+    return true;
+  }
+
+  private void generate(Element element, JsonSchemaTypes annotation)
+      throws CodeGenerationException, IOException {
+    Path path = Paths.get(annotation.path());
+    String baseDir = processingEnv.getOptions().get(BASE_DIR_OPTION);
+    if (baseDir != null) {
+      path = Paths.get(baseDir).resolve(path);
+    }
+
+    String packageOut = annotation.packageOut();
+    if (packageOut.isEmpty()) {
+      packageOut =
+          processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+    }
+    JavaCodeGenerator javaCodeGenerator = new JavaCodeGenerator(packageOut, annotation.mode());
+    javaCodeGenerator.setDeduplicate(annotation.deduplicate());
+    if (!annotation.registryClassName().isEmpty()) {
+      javaCodeGenerator.setRegistryClassName(annotation.registryClassName());
+    }
+    CodeGeneration.build(path,
+        new SchemaDiscovery(Arrays.asList(annotation.includes()),
+            Arrays.asList(annotation.excludes())),
+        javaCodeGenerator);
+    javaCodeGenerator.output(new FilerCodeWriter(processingEnv.getFiler(), element));
+  }
+
+  /**
+   * Writes generated files through the Filer: Java sources as source files, to be compiled in a
+   * later round, and anything else as resources beside them.
+   */
+  private static class FilerCodeWriter extends AbstractCodeWriter {
+    private final Filer filer;
+    private final Element originatingElement;
+
+    FilerCodeWriter(Filer filer, Element originatingElement) {
+      super(StandardCharsets.UTF_8, System.getProperty("line.separator"));
+      this.filer = filer;
+      this.originatingElement = originatingElement;
+    }
+
+    @Override
+    public OutputStream openBinary(String dirName, String fileName) throws IOException {
+      String packageName = dirName.replace('/', '.');
+      if (packageName.endsWith(".")) {
+        packageName = packageName.substring(0, packageName.length() - 1);
+      }
+      if (fileName.endsWith(".java")) {
+        String className = fileName.substring(0, fileName.length() - ".java".length());
+        return filer
+            .createSourceFile(
+                packageName.isEmpty() ? className : packageName + "." + className,
+                originatingElement)
+            .openOutputStream();
+      }
+      return filer
+          .createResource(
+              StandardLocation.SOURCE_OUTPUT, packageName, fileName, originatingElement)
+          .openOutputStream();
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,78 @@
+package net.jimblackler.jsonschematypes.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compiles an annotated class with the processor, and checks that the classes of the schemas are
+ * generated and compiled in the same run.
+ */
+public class JsonSchemaTypesProcessorTest {
+  @Test
+  void generatesAndCompilesClasses(@TempDir Path directory)
+      throws IOException, ReflectiveOperationException, URISyntaxException {
+    Path sources = Files.createDirectories(directory.resolve("src/com/example"));
+    Path anchor = sources.resolve("Anchor.java");
+    Files.write(anchor,
+        ("package com.example;\n"
+            + "\n"
+            + "import net.jimblackler.jsonschematypes.processor.JsonSchemaTypes;\n"
+            + "\n"
+            + "@JsonSchemaTypes(path = \"schemas\", mode = \"map\")\n"
+            + "class Anchor {}\n")
+            .getBytes(StandardCharsets.UTF_8));
+    Path generated = Files.createDirectories(directory.resolve("generated"));
+    Path classes = Files.createDirectories(directory.resolve("classes"));
+    // The relative path of the annotation is resolved against the directory of the test schemas.
+    Path baseDir = Paths.get(
+        JsonSchemaTypesProcessorTest.class.getResource("/schemas/person.json").toURI())
+                       .getParent()
+                       .getParent();
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    boolean compiled;
+    try (StandardJavaFileManager fileManager =
+             compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+      List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+          "-s", generated.toString(), "-d", classes.toString(),
+          "-Ajsonschematypes.baseDir=" + baseDir);
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options,
+          null, fileManager.getJavaFileObjects(anchor.toFile()));
+      task.setProcessors(Collections.singletonList(new JsonSchemaTypesProcessor()));
+      compiled = task.call();
+    }
+    assertTrue(compiled, diagnostics.getDiagnostics().toString());
+    assertTrue(Files.exists(generated.resolve("com/example/Person.java")));
+
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[] {classes.toUri().toURL()},
+             JsonSchemaTypesProcessorTest.class.getClassLoader())) {
+      Class<?> personClass = classLoader.loadClass("com.example.Person");
+      Map<String, Object> data = new HashMap<>();
+      data.put("name", "Ada");
+      Object person = personClass.getConstructor(Map.class).newInstance(data);
+      assertEquals("Ada", personClass.getMethod("getName").invoke(person));
+    }
+  }
+}